@@ -0,0 +1,90 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.codec.PacketCodec;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding & decoding of a single packet without any IO.
+ * {@code encode} also reports the encoded size of the packet as the {@code encodedBytes} counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"java", "binary"})
+    public String codec;
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private Client packetManager;
+    private PacketCodec packetCodec;
+    private PayloadPacket packet;
+    private ByteArrayOutputStream out;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        this.packetManager = new Client();
+        PayloadPacket.register(packetManager);
+        this.packetCodec = Loopback.codec(codec, packetManager);
+        this.packet = PayloadPacket.ofSize(payloadSize);
+        this.out = new ByteArrayOutputStream(payloadSize + 1024);
+
+        packetCodec.encode(packet, out);
+        this.encoded = out.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        packetManager.shutdown();
+    }
+
+    @Benchmark
+    public int encode(EncodedSize size) throws IOException {
+        out.reset();
+        packetCodec.encode(packet, out);
+        size.record(out.size());
+        return out.size();
+    }
+
+    @Benchmark
+    public AbstractPacket decode() throws IOException {
+        return packetCodec.decode(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Bytes of the encoded packet, reported next to the score.
+     * JMH sums event counters over all measured iterations, so every iteration only reports its share.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+
+        public double encodedBytes;
+
+        private double share;
+
+        @Setup
+        public void setup(BenchmarkParams params) {
+            this.share = 1.0 / (params.getMeasurement().getCount() * Math.max(1, params.getForks()));
+        }
+
+        void record(int bytes) {
+            this.encodedBytes = bytes * share;
+        }
+
+    }
+
+}
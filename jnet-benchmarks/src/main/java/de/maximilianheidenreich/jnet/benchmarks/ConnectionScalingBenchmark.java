@@ -0,0 +1,93 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.net.TransportType;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link Client#send} while the client spreads its requests over a pool of connections.
+ * The blocking transport needs a thread per connection on both sides, NIO serves all of them with its selector
+ * threads. {@code roundTrip:threads} reports the live threads of the JVM once all connections are open.
+ * Both ends of every connection live in this JVM, so 4000 connections need more than 8000 file descriptors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionScalingBenchmark {
+
+    @Param({"binary"})
+    public String codec;
+
+    @Param({"BLOCKING", "NIO"})
+    public TransportType transport;
+
+    @Param({"1", "100", "1000", "4000"})
+    public int connections;
+
+    private Loopback loopback;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        this.loopback = new Loopback(codec, transport);
+        loopback.getClient().addPacketHandler(PayloadPacket.class, (p, c) -> {});
+        loopback.getServer().addPacketHandler(PayloadPacket.class, (p, c) -> {
+            try {
+                PayloadPacket response = new PayloadPacket(p.getPayload());
+                response.replyTo(p);
+                c.sendRaw(response);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loopback.connect(connections);
+        this.payload = PayloadPacket.ofSize(16).getPayload();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loopback.close();
+    }
+
+    @Benchmark
+    public AbstractPacket roundTrip(LiveThreads threads) throws IOException, ExecutionException, InterruptedException {
+        threads.sample();
+        return loopback.getClient().send(new PayloadPacket(payload)).get();
+    }
+
+    /**
+     * Live threads of the JVM, reported next to the score.
+     * JMH resets event counters before every iteration & sums them over all measured iterations, so the first
+     * invocation of every iteration samples its share.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LiveThreads {
+
+        public double threads;
+
+        private double share;
+
+        @Setup
+        public void setup(BenchmarkParams params) {
+            this.share = 1.0 / (params.getMeasurement().getCount() * Math.max(1, params.getForks()));
+        }
+
+        void sample() {
+            if (threads == 0) threads = ManagementFactory.getThreadMXBean().getThreadCount() * share;
+        }
+
+    }
+
+}
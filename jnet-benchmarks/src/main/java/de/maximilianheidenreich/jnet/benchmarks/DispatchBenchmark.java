@@ -0,0 +1,84 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.net.PacketDispatcher;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatching received packets through the {@link PacketDispatcher} until their handlers ran, without any IO.
+ * The packets are spread over several connections, so every lane gets work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    /**
+     * Packets dispatched per invocation before waiting for their handlers.
+     */
+    private static final int BATCH = 1024;
+
+    /**
+     * The amount of connections the packets are spread over. A power of two.
+     */
+    private static final int CONNECTIONS = 16;
+
+    @Param({"1", "4"})
+    public int lanes;
+
+    @Param({"1", "4"})
+    public int handlers;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private Client packetManager;
+    private PacketDispatcher dispatcher;
+    private FeedConnection[] connections;
+    private AtomicLong handled;
+    private PayloadPacket packet;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.packetManager = new Client();
+        PayloadPacket.register(packetManager);
+        packetManager.setDispatchLanes(lanes);
+        if (metrics) packetManager.enableMetrics(false);
+
+        this.handled = new AtomicLong();
+        packetManager.addPacketHandler(PayloadPacket.class, (p, c) -> handled.incrementAndGet());
+        for (int i = 1; i < handlers; i++)
+            packetManager.addPacketHandler(PayloadPacket.class, (p, c) -> blackhole.consume(p));
+
+        this.dispatcher = packetManager.getDispatcher();
+        this.connections = new FeedConnection[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++)
+            connections[i] = new FeedConnection(packetManager);
+        this.packet = PayloadPacket.ofSize(16);
+    }
+
+    @TearDown
+    public void tearDown() {
+        packetManager.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() {
+        long target = handled.get() + BATCH;
+
+        for (int i = 0; i < BATCH; i++)
+            dispatcher.dispatch(connections[i & (CONNECTIONS - 1)], packet);
+
+        while (handled.get() < target)
+            Thread.yield();
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.TransportType;
+import de.maximilianheidenreich.jnet.net.server.Server;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency of {@link Server#broadcast} & {@link Server#publish} until every subscriber received the packet.
+ * All subscribers are NIO connections pooled by a single client, so thousands of them do not need thousands of threads.
+ * Both ends of every connection live in this JVM, so 10000 subscribers need more than 20000 file descriptors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+
+    @Param({"binary"})
+    public String codec;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int subscribers;
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    private Loopback loopback;
+    private PayloadPacket packet;
+    private final AtomicLong received = new AtomicLong();
+
+    @Setup
+    public void setup() throws IOException {
+        this.loopback = new Loopback(codec, TransportType.NIO);
+        loopback.getClient().addPacketHandler(PayloadPacket.class, (p, c) -> received.incrementAndGet());
+        loopback.getClient().setDispatchLanes(1);
+
+        loopback.connect(subscribers);
+        for (Connection connection : loopback.getServer().getConnections())
+            loopback.getServer().subscribe(connection, "benchmark");
+
+        this.packet = PayloadPacket.ofSize(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loopback.close();
+    }
+
+    @Benchmark
+    public void broadcast() throws IOException {
+        long expected = received.get() + subscribers;
+        loopback.getServer().broadcast(packet);
+        awaitReceived(expected);
+    }
+
+    @Benchmark
+    public void publish() throws IOException {
+        long expected = received.get() + subscribers;
+        loopback.getServer().publish("benchmark", packet);
+        awaitReceived(expected);
+    }
+
+    private void awaitReceived(long expected) {
+        while (received.get() < expected)
+            LockSupport.parkNanos(1000);
+    }
+
+}
@@ -0,0 +1,46 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * A connection without a socket. Frames are fed in directly & nothing is ever written.
+ */
+final class FeedConnection extends Connection {
+
+    FeedConnection(AbstractPacketManager packetManager) {
+        super(packetManager, new Socket(), "benchmark");
+    }
+
+    /**
+     * Handles a complete frame as if it was read from the socket.
+     *
+     * @param frame
+     *          The frame including its length prefix
+     */
+    void feed(byte[] frame) {
+        handleFrame(frame, 4, frame.length - 4, 0);
+    }
+
+    /**
+     * Encodes a packet into a frame using the codec of the packet manager.
+     *
+     * @param packet
+     *          The packet
+     * @return
+     *          The frame including its length prefix
+     * @throws IOException
+     */
+    byte[] encode(AbstractPacket packet) throws IOException {
+        return encodeFrame(packet);
+    }
+
+    @Override
+    protected void scheduleWrite() {
+    }
+
+}
@@ -0,0 +1,120 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.codec.BinaryPacketCodec;
+import de.maximilianheidenreich.jnet.codec.JavaSerializationCodec;
+import de.maximilianheidenreich.jnet.codec.PacketCodec;
+import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.TransportType;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.net.server.Server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server & client connected over loopback which are configured the same way.
+ */
+public class Loopback {
+
+    private final Server server;
+    private final Client client;
+
+    /**
+     * Starts a server & a client without connecting them.
+     *
+     * @param codec
+     *          "java" or "binary"
+     * @param transport
+     *          The transport to use on both sides
+     * @throws IOException
+     */
+    public Loopback(String codec, TransportType transport) throws IOException {
+        this.server = new Server("127.0.0.1", freePort());
+        this.client = new Client();
+        configure(server, codec, transport);
+        configure(client, codec, transport);
+        server.start();
+    }
+
+    /**
+     * Wrapper around {@link #connect(int)} opening a single connection.
+     *
+     * @return
+     *          The client side of the connection
+     * @throws IOException
+     */
+    public Connection connect() throws IOException {
+        return connect(1);
+    }
+
+    /**
+     * Connects the client to the server using a pool of connections & waits until the server accepted all of them.
+     * Connections opened by an earlier call are closed.
+     *
+     * @param connections
+     *          The size of the pool
+     * @return
+     *          The client side of the first connection
+     * @throws IOException
+     */
+    public Connection connect(int connections) throws IOException {
+        client.setPoolSize(connections);
+        client.connect(server.getHost(), server.getPort());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10 + connections / 100);
+        while (server.getConnections().size() < connections) {
+            if (System.nanoTime() > deadline) throw new IOException("Server did not accept the connections");
+            Thread.yield();
+        }
+        return client.getConnection();
+    }
+
+    /**
+     * Closes all connections & stops both sides.
+     */
+    public void close() throws IOException {
+        client.disconnect();
+        server.stop();
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Creates a codec by name.
+     *
+     * @param codec
+     *          "java" or "binary"
+     * @param packetManager
+     *          The packet manager whose registry should be used
+     * @return
+     *          The codec
+     */
+    public static PacketCodec codec(String codec, AbstractPacketManager packetManager) {
+        switch (codec) {
+            case "java": return new JavaSerializationCodec();
+            case "binary": return new BinaryPacketCodec(packetManager.getPacketRegistry());
+            default: throw new IllegalArgumentException("Unknown codec " + codec);
+        }
+    }
+
+    private static void configure(AbstractPacketManager packetManager, String codec, TransportType transport) {
+        PayloadPacket.register(packetManager);
+        packetManager.setCodec(codec(codec, packetManager));
+        packetManager.setTransportType(transport);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.codec.PacketSerializer;
+import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A packet carrying an opaque payload of configurable size.
+ */
+public class PayloadPacket extends AbstractPacket {
+
+    /**
+     * The id used to register the packet.
+     */
+    public static final int ID = PacketRegistry.FIRST_USER_ID;
+
+    /**
+     * Writes the payload without any java serialization overhead.
+     */
+    public static final PacketSerializer<PayloadPacket> SERIALIZER = new PacketSerializer<PayloadPacket>() {
+        @Override
+        public void write(PayloadPacket packet, DataOutput out) throws IOException {
+            out.writeInt(packet.payload.length);
+            out.write(packet.payload);
+        }
+
+        @Override
+        public PayloadPacket read(DataInput in) throws IOException {
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new PayloadPacket(payload);
+        }
+    };
+
+    private final byte[] payload;
+
+    public PayloadPacket(byte[] payload) {
+        super();
+        this.payload = payload;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Creates a packet with a payload of the specified size.
+     *
+     * @param size
+     *          The payload size in bytes
+     * @return
+     *          The packet
+     */
+    public static PayloadPacket ofSize(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++)
+            payload[i] = (byte) i;
+        return new PayloadPacket(payload);
+    }
+
+    /**
+     * Registers the packet on a packet manager.
+     *
+     * @param packetManager
+     *          The packet manager
+     */
+    public static void register(AbstractPacketManager packetManager) {
+        packetManager.registerPacket(ID, PayloadPacket.class, SERIALIZER);
+    }
+
+}
@@ -0,0 +1,84 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The receive path from a complete frame to the packet handler without any socket IO: decoding, dispatching &
+ * handler invocation. Run it with {@code -prof gc} to see the bytes allocated per received packet.
+ * {@code receiveExpired} measures timed out frames, which are dropped after reading their header.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiveBenchmark {
+
+    /**
+     * Frames fed per invocation before waiting for their handlers.
+     */
+    private static final int BATCH = 1024;
+
+    @Param({"binary", "java"})
+    public String codec;
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    @Param({"lanes", "eventloop"})
+    public String dispatch;
+
+    private AbstractPacketManager packetManager;
+    private FeedConnection connection;
+    private AtomicLong handled;
+    private byte[] frame;
+    private byte[] expiredFrame;
+
+    @Setup
+    public void setup() throws IOException {
+        this.packetManager = new Client();
+        PayloadPacket.register(packetManager);
+        packetManager.setCodec(Loopback.codec(codec, packetManager));
+        if (dispatch.equals("lanes")) packetManager.setDispatchLanes(1);
+
+        this.handled = new AtomicLong();
+        packetManager.addPacketHandler(PayloadPacket.class, (p, c) -> handled.lazySet(handled.get() + 1));
+
+        this.connection = new FeedConnection(packetManager);
+        this.frame = connection.encode(PayloadPacket.ofSize(payloadSize));
+
+        PayloadPacket expired = PayloadPacket.ofSize(payloadSize);
+        expired.setTimout(1);
+        this.expiredFrame = connection.encode(expired);
+    }
+
+    @TearDown
+    public void tearDown() {
+        packetManager.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void receive() {
+        long target = handled.get() + BATCH;
+
+        for (int i = 0; i < BATCH; i++)
+            connection.feed(frame);
+
+        while (handled.get() < target)
+            Thread.yield();
+    }
+
+    @Benchmark
+    public void receiveExpired() {
+        connection.feed(expiredFrame);
+    }
+
+}
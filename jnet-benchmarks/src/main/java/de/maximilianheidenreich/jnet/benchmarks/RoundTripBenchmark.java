@@ -0,0 +1,76 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.CorrelationMode;
+import de.maximilianheidenreich.jnet.net.TransportType;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link Connection#send} until the callback completed with the echoed response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"java", "binary"})
+    public String codec;
+
+    @Param({"BLOCKING", "NIO"})
+    public TransportType transport;
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    @Param({"UUID", "SEQUENCE"})
+    public CorrelationMode correlation;
+
+    private Loopback loopback;
+    private Connection connection;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        this.loopback = new Loopback(codec, transport);
+        loopback.getClient().setCorrelationMode(correlation);
+        loopback.getClient().addPacketHandler(PayloadPacket.class, (p, c) -> {});
+        loopback.getServer().addPacketHandler(PayloadPacket.class, (p, c) -> {
+            try {
+                PayloadPacket response = new PayloadPacket(p.getPayload());
+                response.replyTo(p);
+                c.sendRaw(response);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        this.connection = loopback.connect();
+        this.payload = PayloadPacket.ofSize(payloadSize).getPayload();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loopback.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AbstractPacket roundTrip() throws IOException, ExecutionException, InterruptedException {
+        return connection.send(new PayloadPacket(payload)).get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AbstractPacket roundTrip4Threads() throws IOException, ExecutionException, InterruptedException {
+        return connection.send(new PayloadPacket(payload)).get();
+    }
+
+}
@@ -0,0 +1,62 @@
+package de.maximilianheidenreich.jnet.benchmarks;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.TransportType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One-way throughput of {@link Connection#sendRaw} over loopback. Senders are throttled by the default write
+ * watermarks, so the score reflects what the connection can sustain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendRawBenchmark {
+
+    @Param({"binary"})
+    public String codec;
+
+    @Param({"BLOCKING", "NIO"})
+    public TransportType transport;
+
+    @Param({"16", "1024", "16384"})
+    public int payloadSize;
+
+    private Loopback loopback;
+    private Connection connection;
+    private PayloadPacket packet;
+    private final LongAdder received = new LongAdder();
+
+    @Setup
+    public void setup() throws IOException {
+        this.loopback = new Loopback(codec, transport);
+        loopback.getServer().addPacketHandler(PayloadPacket.class, (p, c) -> received.increment());
+        this.connection = loopback.connect();
+        this.packet = PayloadPacket.ofSize(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loopback.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void sendRaw() throws IOException {
+        connection.sendRaw(packet);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sendRaw4Threads() throws IOException {
+        connection.sendRaw(packet);
+    }
+
+}
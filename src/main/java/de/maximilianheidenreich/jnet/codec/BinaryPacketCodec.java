@@ -0,0 +1,179 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The default {@link PacketCodec}. It identifies packets by their {@link PacketRegistry} id and writes them using
+ * the registered {@link PacketSerializer}s.
+ * Packets without a registered serializer fall back to java serialization, so every packet can still be sent.
+ * The ids & timeout are written in a {@link PacketHeader} in front of the body.
+ * Decoding reuses one input per thread, so apart from the packet itself nothing is allocated. Serializers must not
+ * keep the {@link java.io.DataInput} they read from.
+ */
+public class BinaryPacketCodec implements PacketCodec {
+
+    // ======================   VARS
+
+    /**
+     * The registry used to resolve type ids & serializers. Both peers need matching registrations.
+     */
+    @Getter
+    private final PacketRegistry registry;
+
+    /**
+     * Used for all packets without a registered serializer.
+     */
+    private final JavaSerializationCodec fallback;
+
+    /**
+     * The input reused for decoding by every thread.
+     */
+    private final ThreadLocal<FrameInput> inputs;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new BinaryPacketCodec using the specified registry.
+     * Usually this is the registry of the packet manager: {@code new BinaryPacketCodec(server.getPacketRegistry())}.
+     *
+     * @param registry
+     *          The registry to use
+     */
+    public BinaryPacketCodec(PacketRegistry registry) {
+        this.registry = registry;
+        this.fallback = new JavaSerializationCodec();
+        this.inputs = ThreadLocal.withInitial(FrameInput::new);
+    }
+
+    /**
+     * Creates a new BinaryPacketCodec with a registry only containing the core packets.
+     */
+    public BinaryPacketCodec() {
+        this(new PacketRegistry());
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void encode(AbstractPacket packet, OutputStream out) throws IOException {
+        int typeId = getRegistry().getId(packet.getClass());
+        PacketSerializer<AbstractPacket> serializer = (PacketSerializer<AbstractPacket>) getRegistry().getSerializer(typeId);
+
+        DataOutputStream data = new DataOutputStream(out);
+        PacketHeader.write(packet, typeId, serializer == null, data);
+
+        // RET: No serializer registered!
+        if (serializer == null) {
+            data.flush();
+            fallback.writeObject(packet, out);
+            return;
+        }
+
+        serializer.write(packet, data);
+        data.flush();
+    }
+
+    @Override
+    public AbstractPacket decode(byte[] data, int offset, int length) throws IOException {
+        FrameInput input = inputs.get();
+
+        // A serializer decoding nested packets needs an input of its own
+        if (input.inUse) input = new FrameInput();
+        input.inUse = true;
+
+        PacketHeader header = input.header;
+        AbstractPacket packet;
+        try {
+            int headerLength = header.read(data, offset, length);
+
+            if (header.isSerialized())
+                packet = fallback.readObject(data, offset + headerLength, length - headerLength);
+            else {
+                PacketSerializer<? extends AbstractPacket> serializer = getRegistry().getSerializer(header.getTypeId());
+
+                // RET: Unknown packet!
+                if (serializer == null)
+                    throw new IOException("No serializer registered for packet id " + header.getTypeId());
+
+                packet = serializer.read(input.open(data, offset + headerLength, length - headerLength));
+            }
+            header.applyTo(packet);
+        }
+        finally {
+            input.release();
+        }
+
+        return packet;
+    }
+
+    @Override
+    public boolean readHeader(byte[] data, int offset, int length, PacketHeader header) throws IOException {
+        header.read(data, offset, length);
+        return true;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * A reusable input over a frame body.
+     */
+    private static final class FrameInput extends ByteArrayInputStream {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private final DataInputStream data;
+        private final PacketHeader header;
+        private boolean inUse;
+
+        FrameInput() {
+            super(EMPTY);
+            this.data = new DataInputStream(this);
+            this.header = new PacketHeader();
+        }
+
+        /**
+         * Points the input at a frame body.
+         *
+         * @param buf
+         *          The buffer containing the body
+         * @param offset
+         *          The start of the body
+         * @param length
+         *          The length of the body
+         * @return
+         *          The input to read the body from
+         */
+        DataInputStream open(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.mark = offset;
+            this.count = Math.min(offset + length, buf.length);
+            return data;
+        }
+
+        /**
+         * Drops the reference to the frame body, so the buffer of the connection is not kept alive.
+         */
+        void release() {
+            this.buf = EMPTY;
+            this.pos = 0;
+            this.mark = 0;
+            this.count = 0;
+            this.inUse = false;
+        }
+
+    }
+
+}
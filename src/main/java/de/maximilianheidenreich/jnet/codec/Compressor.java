@@ -0,0 +1,56 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses frame bodies above the compression threshold of the packet manager.
+ * Note: Implementations must be thread safe as multiple connections share one compressor.
+ */
+public interface Compressor {
+
+    /**
+     * Returns the name which is advertised during the handshake. Compression is only used if both peers use a
+     * compressor with the same name.
+     *
+     * @return
+     *          The name
+     */
+    String getName();
+
+    /**
+     * Compresses data.
+     *
+     * @param data
+     *          The buffer containing the data
+     * @param offset
+     *          The start of the data
+     * @param length
+     *          The length of the data
+     * @param out
+     *          The stream to write the compressed data to
+     * @throws IOException
+     */
+    void compress(byte[] data, int offset, int length, OutputStream out) throws IOException;
+
+    /**
+     * Decompresses data into a buffer.
+     *
+     * @param data
+     *          The buffer containing the compressed data
+     * @param offset
+     *          The start of the compressed data
+     * @param length
+     *          The length of the compressed data
+     * @param out
+     *          The buffer to decompress into
+     * @param outOffset
+     *          The start inside out
+     * @param outLength
+     *          The exact length of the decompressed data
+     * @throws IOException
+     *          If the data is corrupt or does not match outLength
+     */
+    void decompress(byte[] data, int offset, int length, byte[] out, int outOffset, int outLength) throws IOException;
+
+}
@@ -0,0 +1,103 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link Compressor} using the {@link Deflater} & {@link Inflater} of the JDK.
+ * Every thread reuses its own deflater, inflater & scratch buffer, so compressing does not allocate native memory
+ * per frame.
+ */
+public class DeflateCompressor implements Compressor {
+
+    // ======================   VARS
+
+    /**
+     * The compression level (see {@link Deflater}).
+     */
+    @Getter
+    private final int level;
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters;
+    private final ThreadLocal<byte[]> buffers;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new DeflateCompressor.
+     *
+     * @param level
+     *          The compression level (0-9 or {@link Deflater#DEFAULT_COMPRESSION})
+     */
+    public DeflateCompressor(int level) {
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+        this.inflaters = ThreadLocal.withInitial(Inflater::new);
+        this.buffers = ThreadLocal.withInitial(() -> new byte[8192]);
+    }
+
+    /**
+     * Creates a new DeflateCompressor favouring speed over ratio.
+     */
+    public DeflateCompressor() {
+        this(Deflater.BEST_SPEED);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Override
+    public void compress(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        Deflater deflater = deflaters.get();
+        byte[] buffer = buffers.get();
+
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+
+        while (!deflater.finished()) {
+            int written = deflater.deflate(buffer);
+            out.write(buffer, 0, written);
+        }
+    }
+
+    @Override
+    public void decompress(byte[] data, int offset, int length, byte[] out, int outOffset, int outLength) throws IOException {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+
+        int total = 0;
+        try {
+            while (total < outLength) {
+                int read = inflater.inflate(out, outOffset + total, outLength - total);
+
+                // RET: Input exhausted before the expected length!
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+
+                total += read;
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Invalid compressed data", e);
+        }
+
+        // RET: Length mismatch!
+        if (total != outLength || !inflater.finished())
+            throw new IOException("Compressed data does not match its length " + outLength);
+    }
+
+}
@@ -0,0 +1,123 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link PacketCodec} which uses plain java serialization for every packet.
+ * It works for every {@link java.io.Serializable} packet but is rather slow & verbose.
+ * A {@link PacketHeader} is written in front of the serialized packet, so expired packets are skipped without
+ * deserializing them. With a registry, packets of registered classes without handlers are skipped as well.
+ * Note: Every decoded packet allocates a whole object stream, use the {@link BinaryPacketCodec} to receive packets
+ * without garbage.
+ */
+public class JavaSerializationCodec implements PacketCodec {
+
+    // ======================   VARS
+
+    /**
+     * The registry used to put type ids into the header | {@code null} if types are not announced.
+     */
+    @Getter
+    private final PacketRegistry registry;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new JavaSerializationCodec announcing the type ids of the specified registry.
+     *
+     * @param registry
+     *          The registry to use | {@code null} to not announce types
+     */
+    public JavaSerializationCodec(PacketRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Creates a new JavaSerializationCodec which does not announce packet types.
+     */
+    public JavaSerializationCodec() {
+        this(null);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public void encode(AbstractPacket packet, OutputStream out) throws IOException {
+        int typeId = getRegistry() != null ? getRegistry().getId(packet.getClass()) : PacketRegistry.UNREGISTERED;
+
+        DataOutputStream data = new DataOutputStream(out);
+        PacketHeader.write(packet, typeId, true, data);
+        data.flush();
+
+        writeObject(packet, out);
+    }
+
+    @Override
+    public AbstractPacket decode(byte[] data, int offset, int length) throws IOException {
+        PacketHeader header = new PacketHeader();
+        int headerLength = header.read(data, offset, length);
+
+        AbstractPacket packet = readObject(data, offset + headerLength, length - headerLength);
+        header.applyTo(packet);
+        return packet;
+    }
+
+    @Override
+    public boolean readHeader(byte[] data, int offset, int length, PacketHeader header) throws IOException {
+        header.read(data, offset, length);
+        return true;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Writes a serialized packet without a header.
+     *
+     * @param packet
+     *          The packet
+     * @param out
+     *          The stream to write to
+     * @throws IOException
+     */
+    void writeObject(AbstractPacket packet, OutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(packet);
+        objectOut.flush();
+    }
+
+    /**
+     * Reads a serialized packet without a header.
+     *
+     * @param data
+     *          The buffer containing the packet
+     * @param offset
+     *          The start of the serialized packet
+     * @param length
+     *          The length of the serialized packet
+     * @return
+     *          The packet
+     * @throws IOException
+     *          If the data does not contain a known packet
+     */
+    AbstractPacket readObject(byte[] data, int offset, int length) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return (AbstractPacket) in.readObject();
+        }
+        catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Frame does not contain a known packet", e);
+        }
+    }
+
+}
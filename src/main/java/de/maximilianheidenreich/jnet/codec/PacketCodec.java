@@ -0,0 +1,63 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Turns packets into the body of a length-prefixed frame and back.
+ * Note: Implementations must be thread safe as multiple connections share one codec.
+ */
+public interface PacketCodec {
+
+    /**
+     * Writes the encoded packet.
+     *
+     * @param packet
+     *          The packet to encode
+     * @param out
+     *          The stream to write the frame body to
+     * @throws IOException
+     */
+    void encode(AbstractPacket packet, OutputStream out) throws IOException;
+
+    /**
+     * Decodes a packet from a single frame body.
+     *
+     * @param data
+     *          The buffer containing the frame
+     * @param offset
+     *          The start of the frame body inside data
+     * @param length
+     *          The length of the frame body
+     * @return
+     *          The decoded packet
+     * @throws IOException
+     *          If the frame does not contain a valid packet
+     */
+    AbstractPacket decode(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Reads only the {@link PacketHeader} of a frame body, so packets which would be dropped anyway can be skipped
+     * without decoding them.
+     * Note: Codecs without a header always return {@code false} & every packet gets decoded.
+     *
+     * @param data
+     *          The buffer containing the frame
+     * @param offset
+     *          The start of the frame body inside data
+     * @param length
+     *          The length of the frame body
+     * @param header
+     *          The header to fill
+     * @return
+     *          {@code true} if the header was read | {@code false} if the codec writes no header
+     * @throws IOException
+     *          If the frame does not contain a valid header
+     */
+    default boolean readHeader(byte[] data, int offset, int length, PacketHeader header) throws IOException {
+        return false;
+    }
+
+}
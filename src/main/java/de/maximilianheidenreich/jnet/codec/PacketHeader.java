@@ -0,0 +1,223 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import de.maximilianheidenreich.jnet.utils.CoarseClock;
+import lombok.Getter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * The fixed part in front of every frame body written by the built-in codecs. It carries everything needed to decide
+ * whether a packet gets handled at all (type, ids & deadline), so the receiver can skip the body of packets which
+ * would be dropped anyway without decoding them.
+ * Layout: type id (short) | flags (byte) | [id (2 longs)] | [sequence id (long)] | [correlation id (long)] | ttl (long)
+ * The timeout travels as the remaining time to live in milliseconds (0 = never, negative = already expired) & is
+ * turned into a deadline on the clock of the receiver, so the clocks of both hosts do not need to agree.
+ * Note: Instances are reused by their reading thread.
+ */
+@Getter
+public class PacketHeader {
+
+    // ======================   VARS
+
+    /**
+     * Flags marking which optional ids are present & how the body is encoded.
+     */
+    public static final int FLAG_ID = 1, FLAG_SEQUENCE = 2, FLAG_CORRELATION = 4, FLAG_SERIALIZED = 8;
+
+    /**
+     * The {@link PacketRegistry} id of the packet | {@link PacketRegistry#UNREGISTERED} if unknown to the sender.
+     */
+    private int typeId;
+
+    /**
+     * The flags of the header.
+     */
+    private int flags;
+
+    /**
+     * The bits of the packet id. Only valid if {@link #hasId()}.
+     */
+    private long idMostSigBits, idLeastSigBits;
+
+    /**
+     * The ids & timeout of the packet (see {@link AbstractPacket}). The timeout is already rebased to the local clock.
+     */
+    private long sequenceId, correlationId, timout;
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Writes the header of a packet.
+     *
+     * @param packet
+     *          The packet
+     * @param typeId
+     *          The registry id of the packet | {@link PacketRegistry#UNREGISTERED}
+     * @param serialized
+     *          Whether the body is written using java serialization
+     * @param out
+     *          The output to write to
+     * @throws IOException
+     */
+    public static void write(AbstractPacket packet, int typeId, boolean serialized, DataOutput out) throws IOException {
+        int flags = (packet.hasId() ? FLAG_ID : 0)
+                | (packet.getSequenceId() != 0 ? FLAG_SEQUENCE : 0)
+                | (packet.getCorrelationId() != 0 ? FLAG_CORRELATION : 0)
+                | (serialized ? FLAG_SERIALIZED : 0);
+
+        out.writeShort(typeId);
+        out.writeByte(flags);
+        if (packet.hasId()) {
+            out.writeLong(packet.getId().getMostSignificantBits());
+            out.writeLong(packet.getId().getLeastSignificantBits());
+        }
+        if (packet.getSequenceId() != 0) out.writeLong(packet.getSequenceId());
+        if (packet.getCorrelationId() != 0) out.writeLong(packet.getCorrelationId());
+        out.writeLong(timeToLive(packet.getTimout()));
+    }
+
+    /**
+     * Reads the header in front of a frame body.
+     *
+     * @param data
+     *          The buffer containing the frame body
+     * @param offset
+     *          The start of the frame body
+     * @param length
+     *          The length of the frame body
+     * @return
+     *          The length of the header. The packet body starts right after it
+     * @throws IOException
+     *          If the frame is too short
+     */
+    public int read(byte[] data, int offset, int length) throws IOException {
+
+        // RET: Frame too short!
+        if (length < 3)
+            throw new IOException("Frame too short");
+
+        this.typeId = (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
+        this.flags = data[offset + 2] & 0xFF;
+
+        int headerLength = 3 + 8
+                + ((flags & FLAG_ID) != 0 ? 16 : 0)
+                + ((flags & FLAG_SEQUENCE) != 0 ? 8 : 0)
+                + ((flags & FLAG_CORRELATION) != 0 ? 8 : 0);
+
+        // RET: Header incomplete!
+        if (length < headerLength)
+            throw new IOException("Frame too short for its header");
+
+        int position = offset + 3;
+        if ((flags & FLAG_ID) != 0) {
+            this.idMostSigBits = readLong(data, position);
+            this.idLeastSigBits = readLong(data, position + 8);
+            position += 16;
+        }
+        this.sequenceId = (flags & FLAG_SEQUENCE) != 0 ? readLong(data, position) : 0;
+        if ((flags & FLAG_SEQUENCE) != 0) position += 8;
+        this.correlationId = (flags & FLAG_CORRELATION) != 0 ? readLong(data, position) : 0;
+        if ((flags & FLAG_CORRELATION) != 0) position += 8;
+        this.timout = deadline(readLong(data, position));
+
+        return headerLength;
+    }
+
+    /**
+     * Copies the ids & timeout into a decoded packet.
+     *
+     * @param packet
+     *          The packet
+     */
+    public void applyTo(AbstractPacket packet) {
+        packet.setId(getId());
+        packet.setSequenceId(getSequenceId());
+        packet.setCorrelationId(getCorrelationId());
+        packet.setTimout(getTimout());
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Checks whether the packet carries an id.
+     *
+     * @return
+     *          {@code true} if it has an id | {@code false} if not
+     */
+    public boolean hasId() {
+        return (flags & FLAG_ID) != 0;
+    }
+
+    /**
+     * Returns the id of the packet.
+     *
+     * @return
+     *          The id | {@code null} if none
+     */
+    public UUID getId() {
+        return hasId() ? new UUID(idMostSigBits, idLeastSigBits) : null;
+    }
+
+    /**
+     * Checks whether the body is written using java serialization.
+     *
+     * @return
+     *          {@code true} if serialized | {@code false} if written by a {@link PacketSerializer}
+     */
+    public boolean isSerialized() {
+        return (flags & FLAG_SERIALIZED) != 0;
+    }
+
+    /**
+     * Checks whether the packet already timed out (see {@link AbstractPacket#isTimeout()}).
+     *
+     * @return
+     *          {@code true} if current time > timout | {@code false} if not
+     */
+    public boolean isTimeout() {
+        return (this.timout != 0 && CoarseClock.currentTimeMillis() > this.timout);
+    }
+
+    /**
+     * Turns a local deadline into the time to live sent on the wire.
+     *
+     * @param timout
+     *          The deadline in milliseconds | 0 = NEVER
+     * @return
+     *          The remaining milliseconds | 0 = NEVER
+     */
+    private static long timeToLive(long timout) {
+
+        // RET: Never times out!
+        if (timout == 0) return 0;
+
+        long ttl = timout - CoarseClock.currentTimeMillis();
+        return ttl != 0 ? ttl : 1;
+    }
+
+    /**
+     * Turns a received time to live into a local deadline.
+     *
+     * @param ttl
+     *          The remaining milliseconds | 0 = NEVER
+     * @return
+     *          The deadline in milliseconds | 0 = NEVER
+     */
+    private static long deadline(long ttl) {
+        return ttl != 0 ? CoarseClock.currentTimeMillis() + ttl : 0;
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        return value;
+    }
+
+}
@@ -0,0 +1,40 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes & reads the custom fields of a single packet type for the {@link BinaryPacketCodec}.
+ * Note: The id & timeout of {@link AbstractPacket} are handled by the codec.
+ *
+ * @param <P>
+ *              The handled packet type
+ */
+public interface PacketSerializer<P extends AbstractPacket> {
+
+    /**
+     * Writes all custom fields of the packet.
+     *
+     * @param packet
+     *          The packet to write
+     * @param out
+     *          The output to write to
+     * @throws IOException
+     */
+    void write(P packet, DataOutput out) throws IOException;
+
+    /**
+     * Creates a new packet from the fields written by {@link #write(AbstractPacket, DataOutput)}.
+     *
+     * @param in
+     *          The input to read from
+     * @return
+     *          The new packet
+     * @throws IOException
+     */
+    P read(DataInput in) throws IOException;
+
+}
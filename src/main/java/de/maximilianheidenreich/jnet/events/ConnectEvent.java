@@ -0,0 +1,34 @@
+package de.maximilianheidenreich.jnet.events;
+
+import de.maximilianheidenreich.jeventloop.events.AbstractEvent;
+import de.maximilianheidenreich.jnet.net.Connection;
+import lombok.Getter;
+
+/**
+ * An event that gets called whenever a new connection was started.
+ */
+@Getter
+public class ConnectEvent extends AbstractEvent<Void> {
+
+    // ======================   VARS
+
+    /**
+     * The started connection.
+     */
+    private final Connection connection;
+
+
+    // ======================   CONSTRUCTOR
+
+    public ConnectEvent(Connection connection) {
+        this.connection = connection;
+    }
+
+    // ======================   HELPERS
+
+    @Override
+    public String toString() {
+        return String.format("[%s-(%s)-(%d)]", getClass().getSimpleName(), getConnection().getName(), getPriority());
+    }
+
+}
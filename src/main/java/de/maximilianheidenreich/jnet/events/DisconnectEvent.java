@@ -0,0 +1,34 @@
+package de.maximilianheidenreich.jnet.events;
+
+import de.maximilianheidenreich.jeventloop.events.AbstractEvent;
+import de.maximilianheidenreich.jnet.net.Connection;
+import lombok.Getter;
+
+/**
+ * An event that gets called whenever a connection was closed. All pending callbacks of the connection already failed.
+ */
+@Getter
+public class DisconnectEvent extends AbstractEvent<Void> {
+
+    // ======================   VARS
+
+    /**
+     * The closed connection.
+     */
+    private final Connection connection;
+
+
+    // ======================   CONSTRUCTOR
+
+    public DisconnectEvent(Connection connection) {
+        this.connection = connection;
+    }
+
+    // ======================   HELPERS
+
+    @Override
+    public String toString() {
+        return String.format("[%s-(%s)-(%d)]", getClass().getSimpleName(), getConnection().getName(), getPriority());
+    }
+
+}
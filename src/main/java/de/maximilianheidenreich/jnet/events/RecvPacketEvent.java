@@ -3,10 +3,16 @@ package de.maximilianheidenreich.jnet.events;
 import de.maximilianheidenreich.jeventloop.events.AbstractEvent;
 import de.maximilianheidenreich.jnet.net.Connection;
 import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
 import lombok.Getter;
 
 /**
  * An event that gets called whenever a new unhandled event got dequeued.
+ * Its priority is derived from the {@link de.maximilianheidenreich.jnet.packets.PacketPriority} of the packet.
+ * Note: A new event is created for every packet handled through the
+ * {@link de.maximilianheidenreich.jeventloop.EventLoop}. Events cannot be reused, since every event owns its callback
+ * & handlers may keep it. Dispatch lanes (see
+ * {@link de.maximilianheidenreich.jnet.net.AbstractPacketManager#setDispatchLanes(int)}) do not create events.
  */
 @Getter
 public class RecvPacketEvent extends AbstractEvent<Void> {
@@ -23,12 +29,23 @@ public class RecvPacketEvent extends AbstractEvent<Void> {
      */
     private final Connection connection;
 
+    /**
+     * The type id from the header of the packet | {@link PacketRegistry#UNREGISTERED} if unknown.
+     */
+    private final int typeId;
+
 
     // ======================   CONSTRUCTOR
 
-    public RecvPacketEvent(AbstractPacket packet, Connection connection) {
+    public RecvPacketEvent(AbstractPacket packet, Connection connection, int typeId) {
         this.packet = packet;
         this.connection = connection;
+        this.typeId = typeId;
+        setPriority(packet.getPriority().getEventPriority());
+    }
+
+    public RecvPacketEvent(AbstractPacket packet, Connection connection) {
+        this(packet, connection, PacketRegistry.UNREGISTERED);
     }
 
     // ======================   BUSINESS LOGIC
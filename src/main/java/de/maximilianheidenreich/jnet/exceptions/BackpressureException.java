@@ -0,0 +1,27 @@
+package de.maximilianheidenreich.jnet.exceptions;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import lombok.Getter;
+
+/**
+ * Thrown when a packet was dropped because the connection exceeded its high write watermark.
+ */
+@Getter
+public class BackpressureException extends JNetException {
+
+    // ======================   VARS
+
+    /**
+     * The connection that was not writable.
+     */
+    private final Connection connection;
+
+
+    // ======================   CONSTRUCTOR
+
+    public BackpressureException(Connection connection) {
+        super("Connection " + connection.getName() + " is not writable");
+        this.connection = connection;
+    }
+
+}
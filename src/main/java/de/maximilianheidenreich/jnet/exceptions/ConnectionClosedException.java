@@ -0,0 +1,27 @@
+package de.maximilianheidenreich.jnet.exceptions;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import lombok.Getter;
+
+/**
+ * Thrown when a packet could not be sent or answered because its connection was closed.
+ */
+@Getter
+public class ConnectionClosedException extends JNetException {
+
+    // ======================   VARS
+
+    /**
+     * The closed connection.
+     */
+    private final Connection connection;
+
+
+    // ======================   CONSTRUCTOR
+
+    public ConnectionClosedException(Connection connection) {
+        super("Connection " + connection.getName() + " was closed");
+        this.connection = connection;
+    }
+
+}
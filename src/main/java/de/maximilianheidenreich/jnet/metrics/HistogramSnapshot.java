@@ -0,0 +1,22 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * An immutable copy of a {@link LatencyHistogram}. All values are in nanoseconds.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class HistogramSnapshot {
+
+    private final long count;
+    private final long mean;
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+
+}
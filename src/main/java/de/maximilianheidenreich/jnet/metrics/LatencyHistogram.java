@@ -0,0 +1,106 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram with power of two buckets. Recording only increments striped counters, so it stays cheap
+ * under contention. Percentiles are reported as the upper bound of their bucket (at most 2x off).
+ */
+public class LatencyHistogram {
+
+    // ======================   VARS
+
+    /**
+     * Bucket i counts values in {@code [2^(i-1), 2^i)}, bucket 0 counts zeros.
+     */
+    private final LongAdder[] buckets;
+
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+
+    // ======================   CONSTRUCTOR
+
+    public LatencyHistogram() {
+        this.buckets = new LongAdder[64];
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Records a value.
+     *
+     * @param nanos
+     *          The value in nanoseconds (negative values count as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[Math.min(63, 64 - Long.numberOfLeadingZeros(value))].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Creates a consistent enough copy of the current values.
+     *
+     * @return
+     *          The snapshot
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        return new HistogramSnapshot(
+                total,
+                total == 0 ? 0 : sum.sum() / total,
+                max.get(),
+                percentile(counts, total, 0.5),
+                percentile(counts, total, 0.9),
+                percentile(counts, total, 0.99)
+        );
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Finds the bucket containing a percentile.
+     *
+     * @param counts
+     *          The bucket counts
+     * @param total
+     *          The sum of all counts
+     * @param percentile
+     *          The percentile (0 - 1)
+     * @return
+     *          The upper bound of the bucket
+     */
+    private static long percentile(long[] counts, long total, double percentile) {
+
+        // RET: Nothing recorded!
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+        }
+        return Long.MAX_VALUE;
+    }
+
+}
@@ -0,0 +1,35 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * An immutable copy of the {@link PacketManagerMetrics} of a server or client.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class MetricsSnapshot {
+
+    private final long packetsIn;
+    private final long packetsOut;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final int connections;
+    private final int pendingCallbacks;
+    private final int dispatcherQueueDepth;
+
+    /**
+     * Received packets by packet class name.
+     */
+    private final Map<String, Long> received;
+
+    /**
+     * Handler latency by packet class name.
+     */
+    private final Map<String, HistogramSnapshot> handlerLatency;
+
+}
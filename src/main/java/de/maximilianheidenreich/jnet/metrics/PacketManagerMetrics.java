@@ -0,0 +1,240 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.PacketDispatcher;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the metrics of a packet manager. Only exists while metrics are enabled, so disabled metrics cost a
+ * single null check per packet.
+ */
+@Log4j
+public class PacketManagerMetrics implements PacketManagerMetricsMBean {
+
+    // ======================   VARS
+
+    /**
+     * The JMX domain of all JNet MBeans.
+     */
+    public static final String JMX_DOMAIN = "de.maximilianheidenreich.jnet";
+
+    /**
+     * Used to give every packet manager a unique JMX name.
+     */
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    /**
+     * The packet manager whose gauges are reported.
+     */
+    private final AbstractPacketManager packetManager;
+
+    /**
+     * The name used inside JMX object names.
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * Traffic summed over all connections.
+     */
+    @Getter
+    private final TrafficMetrics traffic;
+
+    /**
+     * Metrics by packet class.
+     */
+    private final Map<Class<?>, PacketTypeMetrics> packetTypes;
+
+    /**
+     * Caches the entries of {@link #packetTypes} per class so lookups do not need any hashing.
+     */
+    private final ClassValue<PacketTypeMetrics> packetTypeCache;
+
+    /**
+     * Every how many packets of a type the handler latency gets recorded.
+     */
+    @Getter
+    private final int latencySampleInterval;
+
+    /**
+     * Whether the MBeans are registered.
+     */
+    private volatile boolean jmxRegistered;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates new metrics for a packet manager.
+     *
+     * @param packetManager
+     *          The packet manager
+     * @param latencySampleInterval
+     *          Every how many packets of a type the handler latency gets recorded (1 = every packet)
+     */
+    public PacketManagerMetrics(AbstractPacketManager packetManager, int latencySampleInterval) {
+        this.packetManager = packetManager;
+        this.name = packetManager.getClass().getSimpleName() + "-" + INSTANCE_COUNT.getAndIncrement();
+        this.traffic = new TrafficMetrics();
+        this.packetTypes = new ConcurrentHashMap<>();
+        this.latencySampleInterval = latencySampleInterval;
+        this.packetTypeCache = new ClassValue<PacketTypeMetrics>() {
+            @Override
+            protected PacketTypeMetrics computeValue(Class<?> type) {
+                return packetTypes.computeIfAbsent(type, c -> {
+                    PacketTypeMetrics created = new PacketTypeMetrics(c, latencySampleInterval);
+                    if (jmxRegistered) registerMBean(created, packetTypeName(c));
+                    return created;
+                });
+            }
+        };
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the metrics of a packet class & creates them if necessary.
+     *
+     * @param clazz
+     *          The packet class
+     * @return
+     *          The metrics
+     */
+    public PacketTypeMetrics getPacketType(Class<?> clazz) {
+        return packetTypeCache.get(clazz);
+    }
+
+    /**
+     * Creates an immutable copy of all current values.
+     *
+     * @return
+     *          The snapshot
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> received = new TreeMap<>();
+        Map<String, HistogramSnapshot> handlerLatency = new TreeMap<>();
+        for (PacketTypeMetrics metrics : packetTypes.values()) {
+            received.put(metrics.getPacketClass().getName(), metrics.getReceived());
+            handlerLatency.put(metrics.getPacketClass().getName(), metrics.getHandlerLatency().snapshot());
+        }
+
+        return new MetricsSnapshot(
+                getPacketsIn(), getPacketsOut(), getBytesIn(), getBytesOut(),
+                getConnections(), getPendingCallbacks(), getDispatcherQueueDepth(),
+                received, handlerLatency
+        );
+    }
+
+    /**
+     * Registers this & all packet type metrics at the platform MBean server.
+     */
+    public void registerMBeans() {
+        this.jmxRegistered = true;
+        registerMBean(this, managerName());
+        for (PacketTypeMetrics metrics : packetTypes.values())
+            registerMBean(metrics, packetTypeName(metrics.getPacketClass()));
+    }
+
+    /**
+     * Removes all MBeans registered by {@link #registerMBeans()}.
+     */
+    public void unregisterMBeans() {
+        this.jmxRegistered = false;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName objectName : server.queryNames(new ObjectName(JMX_DOMAIN + ":manager=" + ObjectName.quote(getName()) + ",*"), null))
+                server.unregisterMBean(objectName);
+            if (server.isRegistered(managerName()))
+                server.unregisterMBean(managerName());
+        }
+        catch (JMException e) {
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+    }
+
+
+    // ======================   MBEAN
+
+    @Override
+    public long getPacketsIn() {
+        return traffic.getPacketsIn();
+    }
+
+    @Override
+    public long getPacketsOut() {
+        return traffic.getPacketsOut();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return traffic.getBytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return traffic.getBytesOut();
+    }
+
+    @Override
+    public int getConnections() {
+        return packetManager.getConnections().size();
+    }
+
+    @Override
+    public int getPendingCallbacks() {
+        int pending = packetManager.getCallbacks().size();
+        for (Connection connection : packetManager.getConnections())
+            pending += connection.getPendingCallbackCount();
+        return pending;
+    }
+
+    @Override
+    public int getDispatcherQueueDepth() {
+        PacketDispatcher dispatcher = packetManager.getDispatcher();
+        return dispatcher == null ? 0 : dispatcher.getQueueDepth();
+    }
+
+
+    // ======================   HELPERS
+
+    private ObjectName managerName() {
+        return objectName("type=PacketManager,name=" + ObjectName.quote(getName()));
+    }
+
+    private ObjectName packetTypeName(Class<?> clazz) {
+        return objectName("type=PacketType,manager=" + ObjectName.quote(getName()) + ",name=" + ObjectName.quote(clazz.getName()));
+    }
+
+    private static ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(JMX_DOMAIN + ":" + properties);
+        }
+        catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void registerMBean(Object mbean, ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+        }
+        catch (JMException e) {
+            log.error("[JNet] Failed to register MBean " + objectName);
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+/**
+ * JMX view of the {@link PacketManagerMetrics} of a server or client.
+ */
+public interface PacketManagerMetricsMBean {
+
+    long getPacketsIn();
+
+    long getPacketsOut();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    int getConnections();
+
+    int getPendingCallbacks();
+
+    int getDispatcherQueueDepth();
+
+}
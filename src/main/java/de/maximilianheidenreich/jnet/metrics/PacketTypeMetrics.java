@@ -0,0 +1,131 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of all received packets of one class.
+ */
+public class PacketTypeMetrics implements PacketTypeMetricsMBean {
+
+    // ======================   VARS
+
+    /**
+     * The packet class.
+     */
+    @Getter
+    private final Class<?> packetClass;
+
+    private final LongAdder received;
+    private final LongAdder handlerErrors;
+
+    /**
+     * Packets which were dropped without decoding them, because they timed out or had no handlers.
+     */
+    private final LongAdder skipped;
+
+    /**
+     * The time needed to run all handlers of a packet.
+     */
+    @Getter
+    private final LatencyHistogram handlerLatency;
+
+    /**
+     * Only every n-th packet is timed (power of two - 1) as reading the clock costs more than all counters together.
+     */
+    private final int sampleMask;
+
+    /**
+     * Counts packets to decide which get timed. Races only skew the sampling, so it is not atomic.
+     */
+    private int sampleCounter;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates new metrics for a packet class.
+     *
+     * @param packetClass
+     *          The packet class
+     * @param sampleInterval
+     *          Every how many packets the handler latency gets recorded (rounded up to a power of two)
+     */
+    public PacketTypeMetrics(Class<?> packetClass, int sampleInterval) {
+        this.packetClass = packetClass;
+        this.sampleMask = Integer.highestOneBit(Math.max(1, sampleInterval * 2 - 1)) - 1;
+        this.received = new LongAdder();
+        this.handlerErrors = new LongAdder();
+        this.skipped = new LongAdder();
+        this.handlerLatency = new LatencyHistogram();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Decides whether the handler latency of the next packet should be recorded.
+     *
+     * @return
+     *          {@code true} if the packet should be timed
+     */
+    public boolean sample() {
+        return (sampleCounter++ & sampleMask) == 0;
+    }
+
+    /**
+     * Records a handled packet.
+     *
+     * @param nanos
+     *          The time needed to run all handlers | -1 if the packet was not sampled
+     * @param errors
+     *          The amount of handlers that threw an exception
+     */
+    public void recordHandled(long nanos, int errors) {
+        received.increment();
+        if (errors > 0) handlerErrors.add(errors);
+        if (nanos >= 0) handlerLatency.record(nanos);
+    }
+
+    /**
+     * Records a packet which was dropped without decoding it.
+     */
+    public void recordSkipped() {
+        skipped.increment();
+    }
+
+
+    // ======================   HELPERS
+
+    @Override
+    public long getReceived() {
+        return received.sum();
+    }
+
+    @Override
+    public long getHandlerErrors() {
+        return handlerErrors.sum();
+    }
+
+    @Override
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    @Override
+    public long getHandlerLatencyMeanNanos() {
+        return handlerLatency.snapshot().getMean();
+    }
+
+    @Override
+    public long getHandlerLatencyP99Nanos() {
+        return handlerLatency.snapshot().getP99();
+    }
+
+    @Override
+    public long getHandlerLatencyMaxNanos() {
+        return handlerLatency.snapshot().getMax();
+    }
+
+}
@@ -0,0 +1,20 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+/**
+ * JMX view of the {@link PacketTypeMetrics} of one packet class.
+ */
+public interface PacketTypeMetricsMBean {
+
+    long getReceived();
+
+    long getHandlerErrors();
+
+    long getSkipped();
+
+    long getHandlerLatencyMeanNanos();
+
+    long getHandlerLatencyP99Nanos();
+
+    long getHandlerLatencyMaxNanos();
+
+}
@@ -0,0 +1,71 @@
+package de.maximilianheidenreich.jnet.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Striped counters for the packets & bytes passing a connection or a whole packet manager.
+ */
+public class TrafficMetrics {
+
+    // ======================   VARS
+
+    private final LongAdder packetsIn;
+    private final LongAdder packetsOut;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+
+
+    // ======================   CONSTRUCTOR
+
+    public TrafficMetrics() {
+        this.packetsIn = new LongAdder();
+        this.packetsOut = new LongAdder();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Records a received frame.
+     *
+     * @param bytes
+     *          The length of the frame including its length prefix
+     */
+    public void recordIn(int bytes) {
+        packetsIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * Records a written frame.
+     *
+     * @param bytes
+     *          The length of the frame including its length prefix
+     */
+    public void recordOut(int bytes) {
+        packetsOut.increment();
+        bytesOut.add(bytes);
+    }
+
+
+    // ======================   HELPERS
+
+    public long getPacketsIn() {
+        return packetsIn.sum();
+    }
+
+    public long getPacketsOut() {
+        return packetsOut.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+}
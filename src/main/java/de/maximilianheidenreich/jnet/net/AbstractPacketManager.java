@@ -2,20 +2,38 @@ package de.maximilianheidenreich.jnet.net;
 
 import de.maximilianheidenreich.jeventloop.EventLoop;
 import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import de.maximilianheidenreich.jnet.codec.BinaryPacketCodec;
+import de.maximilianheidenreich.jnet.codec.Compressor;
+import de.maximilianheidenreich.jnet.codec.PacketCodec;
+import de.maximilianheidenreich.jnet.codec.PacketHeader;
+import de.maximilianheidenreich.jnet.codec.PacketSerializer;
+import de.maximilianheidenreich.jnet.events.ConnectEvent;
+import de.maximilianheidenreich.jnet.events.DisconnectEvent;
 import de.maximilianheidenreich.jnet.events.RecvPacketEvent;
+import de.maximilianheidenreich.jnet.exceptions.JNetException;
 import de.maximilianheidenreich.jnet.exceptions.PacketTimeoutException;
+import de.maximilianheidenreich.jnet.metrics.PacketManagerMetrics;
+import de.maximilianheidenreich.jnet.metrics.PacketTypeMetrics;
+import de.maximilianheidenreich.jnet.net.nio.NioConnection;
+import de.maximilianheidenreich.jnet.net.nio.NioSelectorPool;
 import de.maximilianheidenreich.jnet.packets.AbstractPacket;
 import de.maximilianheidenreich.jnet.packets.ExceptionPacket;
-import de.maximilianheidenreich.jnet.utils.Pair;
+import de.maximilianheidenreich.jnet.packets.FilePacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import de.maximilianheidenreich.jnet.utils.CoarseClock;
+import de.maximilianheidenreich.jnet.utils.DaemonThreadFactory;
+import de.maximilianheidenreich.jnet.utils.HashedWheelTimer;
+import de.maximilianheidenreich.jnet.utils.VirtualThreads;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.Synchronized;
 import lombok.extern.log4j.Log4j;
 
+import java.io.IOException;
+import java.net.Socket;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
 /**
  * A wrapper class that stores registered packet handlers & callbacks.
@@ -36,10 +54,26 @@ public abstract class AbstractPacketManager {
      */
     private final Map<Class<? extends AbstractPacket>, List<BiConsumer<? extends AbstractPacket, Connection>>> handlers;
 
+    /**
+     * The handler lists of all registered packet classes indexed by their {@link PacketRegistry} id.
+     * Note: Handlers of unregistered classes are only stored inside {@link #handlers}.
+     */
+    private volatile List<BiConsumer<? extends AbstractPacket, Connection>>[] handlersById;
+
+    /**
+     * Assigns numeric type ids to packet classes.
+     */
+    private final PacketRegistry packetRegistry;
+
     /**
      * Store all registered callbacks.
      */
-    private final Map<UUID, Pair<CompletableFuture<AbstractPacket>, Long>> callbacks;   // <packetId, <callback, timeout>>
+    private final Map<UUID, PendingCallback> callbacks;   // <packetId, callback>
+
+    /**
+     * Fails callbacks once the timeout of their packet passed. Ticks with the resolution of the {@link CoarseClock}.
+     */
+    private final HashedWheelTimer callbackTimer;
 
     /**
      *
@@ -52,6 +86,156 @@ public abstract class AbstractPacketManager {
     @Setter
     private EventLoop eventLoop;
 
+    /**
+     * The codec used to encode & decode packets of new connections. Defaults to a {@link BinaryPacketCodec} using
+     * the {@link #packetRegistry}, so registered packets with a serializer skip java serialization.
+     */
+    @Setter
+    private PacketCodec codec;
+
+    /**
+     * The compressor used for big frames | {@code null} = compression disabled.
+     * Compression is only used on connections whose peer advertised the same compressor.
+     */
+    @Setter
+    private Compressor compressor;
+
+    /**
+     * The minimum frame body size in bytes which gets compressed.
+     */
+    @Setter
+    private int compressionThreshold;
+
+    /**
+     * The maximum frame size in bytes which is written in one piece | 0 = never split frames.
+     * Bigger frames are split into chunks of this size which are interleaved with other frames.
+     */
+    @Setter
+    private int chunkSize;
+
+    /**
+     * The maximum amount of chunked frames which are interleaved at once per connection. Also limits how many
+     * transfers of the peer are reassembled at once.
+     */
+    @Setter
+    private int maxConcurrentTransfers;
+
+    /**
+     * The amount of {@link de.maximilianheidenreich.jnet.packets.PacketPriority#INTERACTIVE} frames written per
+     * connection before the next {@link de.maximilianheidenreich.jnet.packets.PacketPriority#BULK} frame or chunk,
+     * while both are waiting.
+     */
+    @Setter
+    private int interactiveWeight;
+
+    /**
+     * The maximum size in bytes of a chunked frame received from the peer. Bigger transfers are dropped.
+     * Together with {@link #maxConcurrentTransfers} this bounds the reassembly memory per connection.
+     */
+    @Setter
+    private int maxTransferSize;
+
+    /**
+     * The maximum time written frames may stay unflushed while a writer keeps draining the outbound queue.
+     * Note: The queue is always flushed once it is empty.
+     */
+    private long flushLatencyNanos;
+
+    /**
+     * The limits for queued outbound data per connection.
+     */
+    @Setter
+    private WriteWatermarks writeWatermarks;
+
+    /**
+     * How sending behaves once a connection exceeded its high watermark.
+     */
+    @Setter
+    private BackpressureMode backpressureMode;
+
+    /**
+     * Runs packet handlers on parallel per connection lanes | {@code null} = use the {@link EventLoop}.
+     */
+    private volatile PacketDispatcher dispatcher;
+
+    /**
+     * How responses are matched to the callbacks of sent requests.
+     */
+    @Setter
+    private CorrelationMode correlationMode;
+
+    /**
+     * The maximum amount of unanswered requests per connection | 0 = unlimited.
+     * Further requests are queued locally until responses arrive.
+     */
+    @Setter
+    private int inFlightWindow;
+
+    /**
+     * The ExecutorService running blocking {@link SocketConnection}s. Every connection occupies one thread while open.
+     */
+    @Setter
+    private ExecutorService connectionThreadExecutor;
+
+    /**
+     * The ExecutorService running the handlers of received {@link de.maximilianheidenreich.jnet.packets.FilePacket}s.
+     * Every file being received occupies one thread, so a consumer never waits for a file whose consumer waits
+     * behind it.
+     */
+    @Setter
+    private ExecutorService fileReceiverExecutor;
+
+    /**
+     * The ExecutorService writing requests which were queued by a full in-flight window once their slot is free.
+     * Slots are freed by I/O & timer threads, which must never wait for backpressure. Also writes the heartbeats of
+     * blocking connections, so the scheduler never waits for a dead peer.
+     */
+    @Setter
+    private ExecutorService requestExecutor;
+
+    /**
+     * The metrics of this packet manager | {@code null} if metrics are disabled.
+     */
+    private volatile PacketManagerMetrics metrics;
+
+    /**
+     * The task sending heartbeats | {@code null} if heartbeats are disabled.
+     */
+    private ScheduledFuture<?> heartbeatTask;
+
+    /**
+     * The time without any received frame after which a connection is closed in nanoseconds | 0 = never.
+     */
+    private long idleTimeoutNanos;
+
+    /**
+     * The task closing idle connections | {@code null} if no idle timeout is set.
+     */
+    private ScheduledFuture<?> idleTask;
+
+    /**
+     * The transport used for new connections.
+     */
+    @Setter
+    private TransportType transportType;
+
+    /**
+     * The amount of selector threads used if {@link TransportType#NIO} is selected.
+     * Note: Changing this has no effect once the first NIO connection was started.
+     */
+    @Setter
+    private int ioThreads;
+
+    /**
+     * The selector threads serving all NIO connections. Lazily created.
+     */
+    private NioSelectorPool selectorPool;
+
+    /**
+     * Whether {@link #shutdown()} was called.
+     */
+    private volatile boolean shutdown;
+
 
     // ======================   CONSTRUCTOR
 
@@ -65,16 +249,347 @@ public abstract class AbstractPacketManager {
     /**
      * Creates a new AbstractPacketManager with a custom executor.
      */
+    @SuppressWarnings("unchecked")
     public AbstractPacketManager(EventLoop eventLoop) {
         this.packetQueue = new LinkedBlockingDeque<>();
         this.handlers = new ConcurrentHashMap<>();
+        this.handlersById = (List<BiConsumer<? extends AbstractPacket, Connection>>[]) new List<?>[PacketRegistry.FIRST_USER_ID];
+        this.packetRegistry = new PacketRegistry();
         this.callbacks = new ConcurrentHashMap<>();
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this.callbackTimer = new HashedWheelTimer("JNet-CallbackTimer", CoarseClock.RESOLUTION_MILLIS, TimeUnit.MILLISECONDS, 1024);
+        this.scheduler = Executors.newScheduledThreadPool(1, new DaemonThreadFactory("JNet-Scheduler-"));
         this.eventLoop = eventLoop;
+        this.codec = new BinaryPacketCodec(packetRegistry);
+        this.compressor = null;
+        this.compressionThreshold = 1024;
+        this.chunkSize = 64 * 1024;
+        this.maxConcurrentTransfers = 4;
+        this.interactiveWeight = 8;
+        this.maxTransferSize = 64 * 1024 * 1024;
+        this.flushLatencyNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        this.writeWatermarks = WriteWatermarks.DEFAULT;
+        this.backpressureMode = BackpressureMode.BLOCK;
+        this.correlationMode = CorrelationMode.UUID;
+        this.inFlightWindow = 0;
+        this.transportType = TransportType.BLOCKING;
+        this.connectionThreadExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("JNet-Connection-"));
+        this.fileReceiverExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("JNet-FileReceiver-"));
+        this.requestExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("JNet-Requests-"));
+        this.ioThreads = Runtime.getRuntime().availableProcessors();
+        this.idleTimeoutNanos = 0;
+        this.shutdown = false;
         setupEventHandlers();
         this.eventLoop.start();
+    }
+
+
+    // ======================   CONNECTION MANAGEMENT
+
+    /**
+     * Sets the maximum time written frames may stay unflushed while a writer keeps draining the outbound queue.
+     *
+     * @param time
+     *          The time amount value
+     * @param unit
+     *          The {@link TimeUnit} of time
+     */
+    public void setFlushLatencyBudget(long time, TimeUnit unit) {
+        this.flushLatencyNanos = unit.toNanos(time);
+    }
+
+    /**
+     * Creates a new {@link Connection} for an already connected socket using the configured {@link TransportType}
+     * and starts reading from it. A {@link ConnectEvent} is dispatched on the {@link EventLoop} afterwards.
+     *
+     * @param socket
+     *          The connected socket ({@link Socket#getChannel()} must not be {@code null} for NIO)
+     * @return
+     *          The started connection
+     * @throws IOException
+     */
+    public Connection startConnection(Socket socket) throws IOException {
+        if (getTransportType() == TransportType.NIO) {
+            NioConnection connection = new NioConnection(this, socket.getChannel());
+            getSelectorPool().register(connection);
+            connection.sendHandshake();
+            getEventLoop().dispatch(new ConnectEvent(connection));
+            return connection;
+        }
+
+        SocketConnection connection = new SocketConnection(this, socket);
+        getConnectionThreadExecutor().execute(connection);
+        connection.sendHandshake();
+        getEventLoop().dispatch(new ConnectEvent(connection));
+        return connection;
+    }
+
+    /**
+     * Runs every blocking connection on its own virtual thread, so the blocking transport scales to many thousand
+     * connections. Only available on Java 21+, otherwise the current executor is kept.
+     *
+     * @return
+     *          {@code true} if virtual threads are used | {@code false} if the JVM does not support them
+     */
+    public boolean useVirtualThreads() {
+
+        // RET: JVM supports them, but the jar was built without its Java 21 classes!
+        if (!VirtualThreads.isSupported() && isVirtualThreadJvm()) {
+            log.error("[JNet] This build of JNet lacks its Java 21 classes (built with a JDK below 21), keeping the current connection executor");
+            return false;
+        }
+
+        // RET: Not supported!
+        if (!VirtualThreads.isSupported()) {
+            log.warn("[JNet] Virtual threads require Java 21+, keeping the current connection executor");
+            return false;
+        }
+
+        setConnectionThreadExecutor(VirtualThreads.newThreadPerTaskExecutor("JNet-Connection-"));
+        return true;
+    }
+
+    /**
+     * Returns all open connections of this packet manager. Every connection is contained exactly once, since
+     * heartbeats, the idle check & the metrics visit each of them.
+     *
+     * @return
+     *          The connections
+     */
+    public abstract Collection<Connection> getConnections();
+
+    /**
+     * Starts recording metrics. Per connection metrics are available through {@link Connection#getMetrics()}.
+     *
+     * @param jmx
+     *          Whether the metrics should be registered as MBeans at the platform MBean server
+     * @param latencySampleInterval
+     *          Every how many packets of a type the handler latency gets recorded (1 = every packet)
+     * @return
+     *          The metrics
+     */
+    @Synchronized
+    public PacketManagerMetrics enableMetrics(boolean jmx, int latencySampleInterval) {
+        if (metrics == null)
+            this.metrics = new PacketManagerMetrics(this, latencySampleInterval);
+        if (jmx) metrics.registerMBeans();
+        return metrics;
+    }
+
+    /**
+     * Wrapper around {@link #enableMetrics(boolean, int)} timing every 16th packet of a type.
+     *
+     * @param jmx
+     *          Whether the metrics should be registered as MBeans at the platform MBean server
+     * @return
+     *          The metrics
+     */
+    public PacketManagerMetrics enableMetrics(boolean jmx) {
+        return enableMetrics(jmx, 16);
+    }
+
+    /**
+     * Stops recording metrics & removes their MBeans.
+     */
+    @Synchronized
+    public void disableMetrics() {
+
+        // RET: Not enabled!
+        if (metrics == null) return;
+
+        metrics.unregisterMBeans();
+        this.metrics = null;
+    }
+
+    /**
+     * Periodically sends heartbeats on every connection. The round trip times are tracked by every connection
+     * (see {@link Connection#getRttNanos()}) & connections whose peer did not answer a number of heartbeats in a row
+     * are closed.
+     * Note: The peer answers heartbeats on its own, it does not need to enable heartbeats as well.
+     *
+     * @param interval
+     *          The time between two heartbeats
+     * @param unit
+     *          The {@link TimeUnit} of interval
+     * @param maxMissed
+     *          The amount of unanswered heartbeats after which a connection is closed | 0 = never close
+     */
+    @Synchronized
+    public void enableHeartbeat(long interval, TimeUnit unit, int maxMissed) {
+        disableHeartbeat();
+        this.heartbeatTask = getScheduler().scheduleAtFixedRate(() -> {
+            for (Connection connection : getConnections()) {
+                try { connection.heartbeat(maxMissed); }
+                catch (Exception e) {
+                    log.error(ExceptionUtils.getStackTraceAsString(e));
+                }
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stops sending heartbeats.
+     */
+    @Synchronized
+    public void disableHeartbeat() {
+        if (heartbeatTask != null) heartbeatTask.cancel(false);
+        this.heartbeatTask = null;
+    }
+
+    /**
+     * Closes connections which did not receive any frame for the specified time. Every frame counts as activity,
+     * so together with {@link #enableHeartbeat(long, TimeUnit, int)} this also closes connections to dead peers.
+     * Note: Connections are checked every half timeout, so they are closed after at most 1.5 times the timeout.
+     *
+     * @param timeout
+     *          The idle timeout | 0 = never close idle connections (default)
+     * @param unit
+     *          The {@link TimeUnit} of timeout
+     */
+    @Synchronized
+    public void setIdleTimeout(long timeout, TimeUnit unit) {
+        if (idleTask != null) idleTask.cancel(false);
+        this.idleTask = null;
+        this.idleTimeoutNanos = Math.max(0, unit.toNanos(timeout));
+
+        // RET: Disabled!
+        if (idleTimeoutNanos == 0) return;
+
+        long timeoutNanos = idleTimeoutNanos;
+        long period = Math.max(1, timeoutNanos / 2);
+        this.idleTask = getScheduler().scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            for (Connection connection : getConnections()) {
+                try { connection.closeIfIdle(now, timeoutNanos); }
+                catch (Exception e) {
+                    log.error(ExceptionUtils.getStackTraceAsString(e));
+                }
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Closes all connections & stops every thread of this packet manager: the scheduler, the callback timer, the
+     * dispatch lanes, the executors, the selector threads & the {@link EventLoop}. Pending callbacks fail with a
+     * {@link de.maximilianheidenreich.jnet.exceptions.ConnectionClosedException}, callbacks not bound to a
+     * connection with a {@link JNetException}.
+     * Note: The packet manager cannot be used anymore afterwards.
+     */
+    @Synchronized
+    public void shutdown() {
+        this.shutdown = true;
+        disableHeartbeat();
+        setIdleTimeout(0, TimeUnit.NANOSECONDS);
+
+        for (Connection connection : new ArrayList<>(getConnections())) {
+            try { connection.close(); }
+            catch (IOException e) {
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+        }
+
+        // Nothing would time them out anymore
+        JNetException reason = new JNetException("Packet manager was shut down");
+        for (PendingCallback pending : new ArrayList<>(getCallbacks().values()))
+            pending.fail(reason);
+
+        getScheduler().shutdownNow();
+        getCallbackTimer().stop();
+        setDispatchLanes(0);
+        getConnectionThreadExecutor().shutdownNow();
+        getFileReceiverExecutor().shutdownNow();
+        getRequestExecutor().shutdownNow();
+        if (selectorPool != null) selectorPool.shutdown();
+        getEventLoop().stop();
+    }
 
-        scheduler.scheduleAtFixedRate(this::cleanupTimeoutCallbacks, 30, 80, TimeUnit.SECONDS);
+    /**
+     * Releases everything associated with a closed connection & dispatches a {@link DisconnectEvent} on the
+     * {@link EventLoop}. Gets called exactly once per connection after its pending callbacks failed.
+     *
+     * @param connection
+     *          The closed connection
+     */
+    void handleConnectionClosed(Connection connection) {
+        try { onConnectionClosed(connection); }
+        catch (Exception e) {
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+
+        getEventLoop().dispatch(new DisconnectEvent(connection));
+    }
+
+    /**
+     * Gets called once a connection was closed. Override it to release resources associated with the connection.
+     *
+     * @param connection
+     *          The closed connection
+     */
+    protected void onConnectionClosed(Connection connection) {
+    }
+
+    /**
+     * Gets called for every request which did not receive a response before its connection was closed. Override it
+     * to send the request again later, otherwise it fails with a
+     * {@link de.maximilianheidenreich.jnet.exceptions.ConnectionClosedException}.
+     *
+     * @param connection
+     *          The closed connection
+     * @param packet
+     *          The request
+     * @param future
+     *          The future of the request which has to be completed once taken over
+     * @return
+     *          {@code true} if the request was taken over | {@code false} if it should fail
+     */
+    protected boolean retainRequest(Connection connection, AbstractPacket packet, CompletableFuture<AbstractPacket> future) {
+        return false;
+    }
+
+    /**
+     * Returns the selector threads serving all NIO connections and creates them if necessary.
+     *
+     * @return
+     *          The selector pool
+     * @throws IOException
+     */
+    @Synchronized
+    public NioSelectorPool getSelectorPool() throws IOException {
+        if (selectorPool == null)
+            selectorPool = new NioSelectorPool(getIoThreads());
+        return selectorPool;
+    }
+
+
+    /**
+     * Sets the amount of parallel dispatch lanes. Every connection is handled by the same lane, while different
+     * connections are handled in parallel.
+     * Note: Prioritized lanes hand packets of a higher {@link de.maximilianheidenreich.jnet.packets.PacketPriority}
+     * to the handlers first, so packets of one connection are only kept in order if they share their priority.
+     *
+     * @param lanes
+     *          The amount of lanes | 0 = handle all packets through the {@link EventLoop} (default)
+     * @param prioritized
+     *          Whether waiting packets are ordered by their priority | {@code false} to handle them in the order
+     *          they were received
+     */
+    @Synchronized
+    public void setDispatchLanes(int lanes, boolean prioritized) {
+        PacketDispatcher old = this.dispatcher;
+        this.dispatcher = lanes > 0 ? new PacketDispatcher(lanes, prioritized) : null;
+        if (old != null) old.shutdown();
+    }
+
+    /**
+     * Wrapper around {@link #setDispatchLanes(int, boolean)} handling the packets of every connection in the order
+     * they were received.
+     * Note: Lanes hand packets over in pooled tasks, while the {@link EventLoop} needs a new {@link RecvPacketEvent}
+     * for every packet.
+     *
+     * @param lanes
+     *          The amount of lanes | 0 = handle all packets through the {@link EventLoop} (default)
+     */
+    public void setDispatchLanes(int lanes) {
+        setDispatchLanes(lanes, false);
     }
 
 
@@ -92,10 +607,8 @@ public abstract class AbstractPacketManager {
 
         // Todo: Check null?
 
-        if (!getHandlers().containsKey(clazz))
-            getHandlers().put(clazz, new ArrayList<>());
-
-        getHandlers().get(clazz).add(handler);
+        getHandlers().computeIfAbsent(clazz, c -> new CopyOnWriteArrayList<>()).add(handler);
+        indexHandlers(clazz);
     }
 
     /**
@@ -119,10 +632,101 @@ public abstract class AbstractPacketManager {
     }
 
 
+    /**
+     * Registers a packet class under a fixed id, so it is identified by that id on the wire & during dispatch.
+     * Note: Both peers have to register the same packets with the same ids.
+     *
+     * @param id
+     *          The id to use (see {@link PacketRegistry#FIRST_USER_ID})
+     * @param clazz
+     *          The packet class
+     * @param serializer
+     *          An optional serializer used by the {@link de.maximilianheidenreich.jnet.codec.BinaryPacketCodec}
+     */
+    public <P extends AbstractPacket> void registerPacket(int id, Class<P> clazz, PacketSerializer<P> serializer) {
+        getPacketRegistry().register(id, clazz, serializer);
+        indexHandlers(clazz);
+    }
+
+    /**
+     * Wrapper around {@link #registerPacket(int, Class, PacketSerializer)} without a serializer.
+     *
+     * @param id
+     *          The id to use (see {@link PacketRegistry#FIRST_USER_ID})
+     * @param clazz
+     *          The packet class
+     */
+    public <P extends AbstractPacket> void registerPacket(int id, Class<P> clazz) {
+        registerPacket(id, clazz, null);
+    }
+
+    /**
+     * Returns the handlers registered for a packet class.
+     *
+     * @param clazz
+     *          The packet class
+     * @return
+     *          The handlers | {@code null} if there are none
+     */
+    public List<BiConsumer<? extends AbstractPacket, Connection>> getHandlers(Class<? extends AbstractPacket> clazz) {
+        int id = getPacketRegistry().getId(clazz);
+        List<BiConsumer<? extends AbstractPacket, Connection>>[] table = handlersById;
+
+        if (id >= 0 && id < table.length && table[id] != null)
+            return table[id];
+
+        return getHandlers().get(clazz);
+    }
+
+    /**
+     * Returns the handlers for a received packet. The type id from its header is used as long as the local registry
+     * maps it to the class of the packet, so registered packets are dispatched without any class based lookup.
+     *
+     * @param packet
+     *          The received packet
+     * @param typeId
+     *          The type id from the header of the packet | {@link PacketRegistry#UNREGISTERED} if unknown
+     * @return
+     *          The handlers | {@code null} if there are none
+     */
+    private List<BiConsumer<? extends AbstractPacket, Connection>> getHandlers(AbstractPacket packet, int typeId) {
+
+        // RET: Indexed by the id from the header!
+        if (getPacketRegistry().getPacketClass(typeId) == packet.getClass()) {
+            List<BiConsumer<? extends AbstractPacket, Connection>>[] table = handlersById;
+            return typeId < table.length ? table[typeId] : null;
+        }
+
+        return getHandlers(packet.getClass());
+    }
+
+    /**
+     * Stores the handler list of a registered packet class inside {@link #handlersById}.
+     *
+     * @param clazz
+     *          The packet class
+     */
+    @Synchronized
+    private void indexHandlers(Class<? extends AbstractPacket> clazz) {
+        int id = getPacketRegistry().getId(clazz);
+        List<BiConsumer<? extends AbstractPacket, Connection>> list = getHandlers().get(clazz);
+
+        // RET: Not registered or no handlers!
+        if (id == PacketRegistry.UNREGISTERED || list == null)
+            return;
+
+        List<BiConsumer<? extends AbstractPacket, Connection>>[] table = handlersById;
+        table = id < table.length ? table.clone() : Arrays.copyOf(table, Math.max(id + 1, table.length * 2));
+        table[id] = list;
+        this.handlersById = table;
+    }
+
+
     // ======================   CALLBACK MANAGEMENT
 
     /**
-     * Adds a callback.
+     * Adds a callback. If the packet has a timeout, the callback fails with a {@link PacketTimeoutException}
+     * once it passed.
      *
      * @param packet
      *          The packet associated with the callback
@@ -130,14 +734,42 @@ public abstract class AbstractPacketManager {
      *          {@code true} if added | {@code false} if not added
      */
     public boolean addCallback(AbstractPacket packet, CompletableFuture<AbstractPacket> callback) {
+        return registerCallback(packet, callback, null) != null;
+    }
 
-        // RET: Callback already exists! This indicates a possible issue with packet id's and reusing ids to fast
-        if (getCallbacks().containsKey(packet.getId()))
-            return false;
+    /**
+     * Registers a callback for a packet that is about to be sent on a connection using the {@link CorrelationMode}
+     * of this manager.
+     *
+     * @param packet
+     *          The packet associated with the callback
+     * @param callback
+     *          The future completed with the response
+     * @param connection
+     *          The connection the packet will be sent on ({@code null} forces {@link CorrelationMode#UUID})
+     * @return
+     *          The registered callback | {@code null} if a callback with the same id already exists
+     */
+    public PendingCallback registerCallback(AbstractPacket packet, CompletableFuture<AbstractPacket> callback, Connection connection) {
+        PendingCallback pending;
 
-        getCallbacks().put(packet.getId(), Pair.from(callback, packet.getTimout()));
-        return true;
+        if (connection != null && getCorrelationMode() == CorrelationMode.SEQUENCE) {
+            packet.setSequenceId(connection.nextSequenceId());
+            pending = new PendingCallback(this, connection, packet, callback, packet.getSequenceId());
+            connection.addPendingCallback(pending);
+        }
+        else {
+            pending = new PendingCallback(this, connection, packet, callback, 0);
+
+            // RET: Callback already exists! This indicates a possible issue with packet id's and reusing ids to fast
+            if (getCallbacks().putIfAbsent(packet.getId(), pending) != null)
+                return null;
+            if (connection != null) connection.trackCallback(pending);
+        }
 
+        if (packet.getTimout() != 0)
+            getCallbackTimer().schedule(pending, packet.getTimout() - CoarseClock.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        return pending;
     }
 
     /**
@@ -150,69 +782,216 @@ public abstract class AbstractPacketManager {
      */
     public boolean removeCallback(AbstractPacket packet) {
 
+        // RET: Packet was never registered!
+        if (!packet.hasId())
+            return false;
+
+        PendingCallback pending = detachCallback(packet.getId());
+
         // RET: No registered callback!
-        if (!getCallbacks().containsKey(packet.getId()))
+        if (pending == null)
             return false;
 
-        getCallbacks().remove(packet.getId());
+        pending.cancel();
         return true;
 
     }
 
     /**
-     * Removes all timed out callbacks.
-     * Note: A timed out callback will automatically get removed if a timed out packet was received.
-     *       But this prevents memory leaks if a packet never gets delivered!
+     * Removes the callback a received response belongs to.
+     *
+     * @param response
+     *          The received packet
+     * @param connection
+     *          The connection the packet was received from | {@code null} if unknown
+     * @return
+     *          The removed callback | {@code null} if there is none
+     */
+    private PendingCallback takeCallback(AbstractPacket response, Connection connection) {
+        if (response.getCorrelationId() != 0)
+            return connection != null ? connection.takePendingCallback(response.getCorrelationId()) : null;
+
+        return response.hasId() ? detachCallback(response.getId()) : null;
+    }
+
+    /**
+     * Removes the callback a received but not decoded response belongs to.
+     *
+     * @param header
+     *          The header of the received packet
+     * @param connection
+     *          The connection the packet was received from
+     * @return
+     *          The removed callback | {@code null} if there is none
+     */
+    private PendingCallback takeCallback(PacketHeader header, Connection connection) {
+        if (header.getCorrelationId() != 0)
+            return connection.takePendingCallback(header.getCorrelationId());
+
+        return header.hasId() ? detachCallback(header.getId()) : null;
+    }
+
+
+    /**
+     * Removes a callback registered using {@link CorrelationMode#UUID} by the id of its packet.
+     *
+     * @param id
+     *          The id of the packet
+     * @return
+     *          The removed callback | {@code null} if there is none
+     */
+    private PendingCallback detachCallback(UUID id) {
+        PendingCallback pending = getCallbacks().remove(id);
+        if (pending != null && pending.getConnection() != null) pending.getConnection().untrackCallback(pending);
+        return pending;
+    }
+
+    /**
+     * Removes a specific callback registered using {@link CorrelationMode#UUID}.
+     *
+     * @param pending
+     *          The expected callback
+     * @return
+     *          {@code true} if removed | {@code false} if it was already removed by someone else
      */
-    private void cleanupTimeoutCallbacks() {
-        List<UUID> timedOutPackets = getCallbacks().keySet().stream()
-                .filter(uuid -> {
-                    long timeout =getCallbacks().get(uuid).getB();
-                    return (timeout != 0 && System.currentTimeMillis() > timeout);
-                }).collect(Collectors.toList());
+    boolean detachCallback(PendingCallback pending) {
 
-        log.debug("[JNet] Found " + timedOutPackets.size() + " timed out packets to remove!");
-        timedOutPackets.forEach(p -> getCallbacks().remove(p));
+        // RET: Already removed!
+        if (!getCallbacks().remove(pending.getPacket().getId(), pending)) return false;
+
+        if (pending.getConnection() != null) pending.getConnection().untrackCallback(pending);
+        return true;
     }
 
 
     // ======================   EVENT HANDLERS
 
     /**
-     * Calls all registered packet handlers.
+     * Calls all registered packet handlers for packets dispatched through the {@link EventLoop}.
      *
      * @param event
      *          The handled event
      */
     @Synchronized
     private void handleRecvPacketEvent(RecvPacketEvent event) {
-        AbstractPacket packet = event.getPacket();
+        handlePacket(event.getPacket(), event.getConnection(), event.getTypeId());
+    }
+
+    /**
+     * Calls all registered packet handlers & completes the matching callback.
+     * Note: This is called by the EventLoop or by the lane of the connection if a {@link PacketDispatcher} is used.
+     *
+     * @param packet
+     *          The received packet
+     * @param connection
+     *          The connection the packet was received from
+     * @param typeId
+     *          The type id from the header of the packet | {@link PacketRegistry#UNREGISTERED} if unknown
+     */
+    void handlePacket(AbstractPacket packet, Connection connection, int typeId) {
+
+        // RET: Content of files is only readable while their handlers run!
+        if (packet instanceof FilePacket) {
+            try { callHandlers(packet, connection, typeId); }
+            finally {
+                try { ((FilePacket) packet).getChannel().close(); }
+                catch (IOException e) {
+                    log.error(ExceptionUtils.getStackTraceAsString(e));
+                }
+            }
+            return;
+        }
+
+        callHandlers(packet, connection, typeId);
+    }
+
+    /**
+     * Calls all registered packet handlers & completes the matching callback.
+     *
+     * @param packet
+     *          The received packet
+     * @param connection
+     *          The connection the packet was received from
+     * @param typeId
+     *          The type id from the header of the packet | {@link PacketRegistry#UNREGISTERED} if unknown
+     */
+    @SuppressWarnings("unchecked")
+    private void callHandlers(AbstractPacket packet, Connection connection, int typeId) {
 
         // RET: Timeout!
         if (packet.isTimeout()) {
-            exceptCallback(packet, new PacketTimeoutException(packet));
+            exceptCallback(packet, connection, new PacketTimeoutException(packet));
             return;
         }
 
+        List<BiConsumer<? extends AbstractPacket, Connection>> handlers = getHandlers(packet, typeId);
+
         // RET: No handlers for abstractEvent!
-        if (!getHandlers().containsKey(event.getPacket().getClass()))
+        if (handlers == null)
             return;
 
-        for (BiConsumer<? extends AbstractPacket, Connection> rawHandler : getHandlers().get(packet.getClass())) {
+        PacketManagerMetrics metrics = getMetrics();
+        PacketTypeMetrics typeMetrics = metrics != null ? metrics.getPacketType(packet.getClass()) : null;
+        long start = typeMetrics != null && typeMetrics.sample() ? System.nanoTime() : -1;
+        int errors = 0;
+
+        for (BiConsumer<? extends AbstractPacket, Connection> rawHandler : handlers) {
             BiConsumer<AbstractPacket, Connection> handler = (BiConsumer<AbstractPacket, Connection>) rawHandler;
 
-            try { handler.accept(packet, event.getConnection()); }
+            try { handler.accept(packet, connection); }
             catch (Exception e) {
+                errors++;
                 log.error(ExceptionUtils.getStackTraceAsString(e));
             }
 
         }
 
-        if (packet instanceof ExceptionPacket) exceptCallback(packet, ((ExceptionPacket) packet).getException());
-        else completeCallback(packet);
+        if (typeMetrics != null)
+            typeMetrics.recordHandled(start >= 0 ? System.nanoTime() - start : -1, errors);
+
+        if (packet instanceof ExceptionPacket) exceptCallback(packet, connection, ((ExceptionPacket) packet).getException());
+        else completeCallback(packet, connection);
 
     }
 
+    /**
+     * Decides from its header whether a received packet would be dropped by {@link #callHandlers} anyway, so
+     * decoding it can be skipped. Timed out packets still fail the callback they respond to.
+     * Note: Core packets are never skipped as some of them are handled internally.
+     *
+     * @param header
+     *          The header of the received packet
+     * @param connection
+     *          The connection the packet was received from
+     * @return
+     *          {@code true} if the packet should be dropped without decoding it
+     */
+    boolean skipPacket(PacketHeader header, Connection connection) {
+        int typeId = header.getTypeId();
+
+        // RET: Core packet!
+        if (typeId != PacketRegistry.UNREGISTERED && typeId < PacketRegistry.FIRST_USER_ID)
+            return false;
+
+        Class<? extends AbstractPacket> clazz = getPacketRegistry().getPacketClass(typeId);
+        boolean timeout = header.isTimeout();
+        List<BiConsumer<? extends AbstractPacket, Connection>>[] table = handlersById;
+
+        // RET: Gets handled or the type is unknown, so its handlers cannot be checked!
+        if (!timeout && (clazz == null || (typeId < table.length && table[typeId] != null)))
+            return false;
+
+        PacketManagerMetrics metrics = getMetrics();
+        if (metrics != null && clazz != null) metrics.getPacketType(clazz).recordSkipped();
+
+        if (timeout) {
+            PendingCallback callback = takeCallback(header, connection);
+            if (callback != null) callback.except(new PacketTimeoutException(callback.getPacket()));
+        }
+
+        return true;
+    }
+
 
     // ======================   HELPERS
 
@@ -223,34 +1002,76 @@ public abstract class AbstractPacketManager {
         getEventLoop().addEventHandler(RecvPacketEvent.class, this::handleRecvPacketEvent);
     }
 
+    /**
+     * Checks whether the running JVM supports virtual threads, independent of the classes packaged in the jar.
+     *
+     * @return
+     *          {@code true} if {@code Thread.ofVirtual()} exists
+     */
+    private static boolean isVirtualThreadJvm() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     /**
      * Completes a registered callback with the specified packet as data.
      *
      * @param packet
      *          The data to pass back to the callbacks
+     * @param connection
+     *          The connection the packet was received from | {@code null} if unknown
      */
-    public void completeCallback(AbstractPacket packet) {
+    public void completeCallback(AbstractPacket packet, Connection connection) {
+        PendingCallback callback = takeCallback(packet, connection);
 
         // RET: No registered callbacks!
-        if (!getCallbacks().containsKey(packet.getId())) return;
+        if (callback == null) return;
 
-        getCallbacks().get(packet.getId()).getA().complete(packet);
-        removeCallback(packet);
+        callback.complete(packet);
+    }
+
+    /**
+     * Wrapper around {@link #completeCallback(AbstractPacket, Connection)} for {@link CorrelationMode#UUID}.
+     *
+     * @param packet
+     *          The data to pass back to the callbacks
+     */
+    public void completeCallback(AbstractPacket packet) {
+        completeCallback(packet, null);
     }
 
     /**
      * Excepts a registered callback.
      *
+     * @param packet
+     *          The received packet
+     * @param connection
+     *          The connection the packet was received from | {@code null} if unknown
      * @param throwable
      *          The reason why except was called
      */
-    public void exceptCallback(AbstractPacket packet, Throwable throwable) {
+    public void exceptCallback(AbstractPacket packet, Connection connection, Throwable throwable) {
+        PendingCallback callback = takeCallback(packet, connection);
 
         // RET: No registered callbacks!
-        if (!getCallbacks().containsKey(packet.getId())) return;
+        if (callback == null) return;
 
-        getCallbacks().get(packet.getId()).getA().completeExceptionally(throwable);
-        removeCallback(packet);
+        callback.except(throwable);
+    }
+
+    /**
+     * Wrapper around {@link #exceptCallback(AbstractPacket, Connection, Throwable)} for {@link CorrelationMode#UUID}.
+     *
+     * @param throwable
+     *          The reason why except was called
+     */
+    public void exceptCallback(AbstractPacket packet, Throwable throwable) {
+        exceptCallback(packet, null, throwable);
     }
 
 
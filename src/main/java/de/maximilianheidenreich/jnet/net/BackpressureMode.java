@@ -0,0 +1,25 @@
+package de.maximilianheidenreich.jnet.net;
+
+/**
+ * Defines how {@link Connection#sendRaw(de.maximilianheidenreich.jnet.packets.AbstractPacket, boolean)} behaves once
+ * the high {@link WriteWatermarks watermark} of a connection was exceeded.
+ */
+public enum BackpressureMode {
+
+    /**
+     * The sending thread blocks until the connection is writable again.
+     */
+    BLOCK,
+
+    /**
+     * The returned future is completed exceptionally with a
+     * {@link de.maximilianheidenreich.jnet.exceptions.BackpressureException} & the packet is dropped.
+     */
+    FAIL,
+
+    /**
+     * The packet is held back locally & the returned future completes once it was queued for writing.
+     */
+    DELAY
+
+}
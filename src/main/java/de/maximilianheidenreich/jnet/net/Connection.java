@@ -1,107 +1,1810 @@
 package de.maximilianheidenreich.jnet.net;
 
 import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import de.maximilianheidenreich.jnet.codec.Compressor;
+import de.maximilianheidenreich.jnet.codec.PacketCodec;
+import de.maximilianheidenreich.jnet.codec.PacketHeader;
 import de.maximilianheidenreich.jnet.events.RecvPacketEvent;
+import de.maximilianheidenreich.jnet.exceptions.BackpressureException;
+import de.maximilianheidenreich.jnet.exceptions.ConnectionClosedException;
+import de.maximilianheidenreich.jnet.metrics.PacketManagerMetrics;
+import de.maximilianheidenreich.jnet.metrics.TrafficMetrics;
 import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.FilePacket;
+import de.maximilianheidenreich.jnet.packets.PacketPriority;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import de.maximilianheidenreich.jnet.packets.core.HandshakePacket;
 import de.maximilianheidenreich.jnet.packets.core.NameChangePacket;
+import de.maximilianheidenreich.jnet.packets.core.TimingPacket;
+import de.maximilianheidenreich.jnet.utils.LongObjectMap;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InterruptedIOException;
 import java.net.Socket;
-import java.util.UUID;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * A connection which can represent a client to server / server to client connection.
+ * The actual reading & writing is implemented by the transport specific subclasses.
+ * Packets are transmitted as frames: {@code [int length][body encoded by the PacketCodec]}.
+ * The highest bit of the length marks compressed frames: {@code [int length | FRAME_COMPRESSED][int body length][compressed body]}.
+ * Frames above the chunk size of the packet manager are split into chunks which are interleaved with other frames:
+ * {@code [int length | FRAME_CHUNK][int transfer id][int frame length][int offset][part of the frame]}.
+ * Files follow their {@link FilePacket} in chunks which are written straight from disk:
+ * {@code [int length | FRAME_FILE][int stream id][part of the file]}.
+ * Senders only enqueue encoded frames, a single writer at a time drains the queue onto the socket.
  */
 @Log4j
 @Getter
-public class Connection implements Runnable {
+public abstract class Connection {
 
     // ======================   VARS
 
+    /**
+     * Set inside the length prefix of compressed frames.
+     */
+    protected static final int FRAME_COMPRESSED = 0x80000000;
+
+    /**
+     * Set inside the length prefix of chunks of a bigger frame.
+     */
+    protected static final int FRAME_CHUNK = 0x40000000;
+
+    /**
+     * Set inside the length prefix of file chunks. Chunks are never compressed, so both flags together mark them.
+     */
+    protected static final int FRAME_FILE = FRAME_COMPRESSED | FRAME_CHUNK;
+
+    /**
+     * Masks the actual length out of the length prefix.
+     */
+    protected static final int FRAME_LENGTH = 0x3FFFFFFF;
+
+    /**
+     * The size of the header in front of the data of every chunk.
+     */
+    private static final int CHUNK_HEADER = 12;
+
+    /**
+     * The size of file chunks if chunking is disabled.
+     */
+    private static final int DEFAULT_FILE_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The amount of file chunks buffered per received file.
+     */
+    private static final int BUFFERED_FILE_CHUNKS = 16;
+
+    /**
+     * The maximum ratio between decompressed & compressed size deflate can produce. Used to reject corrupt lengths.
+     */
+    private static final int MAX_COMPRESSION_RATIO = 1032;
+
+    /**
+     * The biggest inflate buffer kept between frames. Bigger buffers are released once their frame was decoded.
+     */
+    private static final int MAX_RETAINED_INFLATE_BUFFER = 64 * 1024;
+
     /**
      * A name for the connection.
      */
-    private String name;
+    private String name;
+
+    /**
+     * The parent AbstractPacketManager which will handle any packets.
+     */
+    private final AbstractPacketManager packetManager;
+
+    /**
+     * Reference to the {@link Socket} instance.
+     */
+    private final Socket socket;
+
+    /**
+     * The codec used to encode & decode frame bodies.
+     */
+    private final PacketCodec codec;
+
+    /**
+     * The compressor of the packet manager | {@code null} if compression is disabled.
+     */
+    private final Compressor compressor;
+
+    /**
+     * Whether the peer advertised the same compressor, so outgoing frames may be compressed.
+     */
+    private volatile boolean compressionEnabled;
+
+    /**
+     * Reused buffer for decompressed frame bodies. Only touched by the reading thread.
+     */
+    @Getter(AccessLevel.NONE)
+    private byte[] inflateBuffer;
+
+    /**
+     * Reused for the header of received packets. Only touched by the reading thread.
+     */
+    @Getter(AccessLevel.NONE)
+    private final PacketHeader receivedHeader;
+
+    /**
+     * Whether {@link #close()} was called.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean closed;
+
+    /**
+     * Traffic of this connection. Only updated while the metrics of the packet manager are enabled.
+     */
+    private final TrafficMetrics metrics;
+
+    /**
+     * Encoded frames waiting to be written by their {@link PacketPriority}. Filled by any thread, drained by a
+     * single writer.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Queue<byte[]>[] outboundQueues;
+
+    /**
+     * The amount of interactive frames which may still be written before the next bulk frame. Only touched by the
+     * writer.
+     */
+    @Getter(AccessLevel.NONE)
+    private int interactiveCredit;
+
+    /**
+     * The amount of bytes inside the outbound queue.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong pendingBytes;
+
+    /**
+     * The amount of frames inside the outbound queue.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger pendingPackets;
+
+    /**
+     * Whether the pending data is below the {@link WriteWatermarks}.
+     */
+    private volatile boolean writable;
+
+    /**
+     * Completed once the connection becomes writable again. Guarded by {@link #writabilityLock}.
+     */
+    @Getter(AccessLevel.NONE)
+    private CompletableFuture<Void> writableFuture;
+
+    /**
+     * Used to wait for & signal writability changes.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Object writabilityLock;
+
+    /**
+     * Listeners which get called after every writability change.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<Consumer<Connection>> writabilityListeners;
+
+    /**
+     * Frames held back by {@link BackpressureMode#DELAY} until the connection becomes writable again.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Queue<DeferredFrame> deferredFrames;
+
+
+    /**
+     * Frames above the chunk size waiting to be written in chunks.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Queue<Transfer> pendingTransfers;
+
+    /**
+     * Transfers whose chunks are currently interleaved. Only polled by the writer.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Queue<Transfer> activeTransfers;
+
+    /**
+     * The last id assigned to a transfer.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger transferIds;
+
+    /**
+     * The amount of bytes of queued transfers not written yet. They count towards the byte limits of the
+     * {@link WriteWatermarks}, so big packets & files are subject to the {@link BackpressureMode} as well.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong pendingTransferBytes;
+
+    /**
+     * Partially received transfers by their id. Only touched by the reading thread.
+     */
+    @Getter(AccessLevel.NONE)
+    private final LongObjectMap<Reassembly> reassemblies;
+
+    /**
+     * The file whose chunk header was just returned by {@link #pollFrame()} & whose data has to be written next.
+     * Only touched by the writer.
+     */
+    @Getter(AccessLevel.NONE)
+    private FileTransfer fileRegion;
+
+    /**
+     * Files which are currently received by their stream id. Guarded by itself.
+     */
+    @Getter(AccessLevel.NONE)
+    private final LongObjectMap<IncomingFile> incomingFiles;
+
+
+    /**
+     * The last sequence id assigned to a sent request.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong sequence;
+
+    /**
+     * Callbacks registered using {@link CorrelationMode#SEQUENCE} by their sequence id. Guarded by itself.
+     */
+    @Getter(AccessLevel.NONE)
+    private final LongObjectMap<PendingCallback> pendingCallbacks;
+
+    /**
+     * Callbacks registered using {@link CorrelationMode#UUID} for requests sent on this connection. They are stored
+     * by the packet manager, this only indexes them, so closing the connection fails them without visiting the
+     * callbacks of all other connections.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Set<PendingCallback> trackedCallbacks;
+
+    /**
+     * The amount of sent requests without a response.
+     */
+    @Getter(AccessLevel.NONE)
+    private int inFlightRequests;
+
+    /**
+     * Requests waiting for a free slot in the in-flight window. Also guards {@link #inFlightRequests}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Queue<PendingCallback> queuedRequests;
+
+    /**
+     * Requests which got a freed slot of the in-flight window & wait to be written by the request executor of the
+     * packet manager. Guarded by {@link #queuedRequests}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Queue<PendingCallback> releasedRequests;
+
+    /**
+     * Whether a task of the request executor is writing the released requests. Guarded by {@link #queuedRequests}.
+     */
+    @Getter(AccessLevel.NONE)
+    private boolean transmittingReleased;
+
+
+    /**
+     * The smoothed round trip time of heartbeats in nanoseconds (EWMA, alpha = 1/8) | -1 if not measured yet.
+     */
+    private volatile long rttNanos;
+
+    /**
+     * The lowest measured round trip time in nanoseconds | -1 if not measured yet.
+     */
+    private volatile long minRttNanos;
+
+    /**
+     * The highest measured round trip time in nanoseconds | -1 if not measured yet.
+     */
+    private volatile long maxRttNanos;
+
+    /**
+     * The amount of heartbeats in a row the peer did not answer.
+     */
+    private volatile int missedHeartbeats;
+
+    /**
+     * Whether the last sent heartbeat is still unanswered.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile boolean heartbeatPending;
+
+
+    /**
+     * Whether a frame was read since the last idle check. Only written once per check, so reading stays cheap.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile boolean readSinceIdleCheck;
+
+    /**
+     * The {@link System#nanoTime()} of the last idle check which saw read activity. Only touched by the scheduler.
+     */
+    @Getter(AccessLevel.NONE)
+    private long lastActiveNanos;
+
+
+    // ======================   CONSTRUCTOR
+
+    protected Connection(AbstractPacketManager packetManager, Socket socket, String name) {
+        this.name = name;
+        this.packetManager = packetManager;
+        this.socket = socket;
+        this.codec = packetManager.getCodec();
+        this.compressor = packetManager.getCompressor();
+        this.compressionEnabled = false;
+        this.inflateBuffer = new byte[0];
+        this.receivedHeader = new PacketHeader();
+        this.closed = new AtomicBoolean(false);
+        this.metrics = new TrafficMetrics();
+        this.outboundQueues = newOutboundQueues();
+        this.pendingBytes = new AtomicLong();
+        this.pendingPackets = new AtomicInteger();
+        this.writable = true;
+        this.writableFuture = CompletableFuture.completedFuture(null);
+        this.writabilityLock = new Object();
+        this.writabilityListeners = new CopyOnWriteArrayList<>();
+        this.deferredFrames = new ArrayDeque<>();
+        this.pendingTransfers = new ConcurrentLinkedQueue<>();
+        this.activeTransfers = new ConcurrentLinkedQueue<>();
+        this.transferIds = new AtomicInteger();
+        this.pendingTransferBytes = new AtomicLong();
+        this.reassemblies = new LongObjectMap<>();
+        this.incomingFiles = new LongObjectMap<>();
+        this.sequence = new AtomicLong();
+        this.pendingCallbacks = new LongObjectMap<>();
+        this.trackedCallbacks = ConcurrentHashMap.newKeySet();
+        this.inFlightRequests = 0;
+        this.queuedRequests = new ArrayDeque<>();
+        this.releasedRequests = new ArrayDeque<>();
+        this.rttNanos = -1;
+        this.minRttNanos = -1;
+        this.maxRttNanos = -1;
+        this.missedHeartbeats = 0;
+        this.heartbeatPending = false;
+        this.readSinceIdleCheck = false;
+        this.lastActiveNanos = System.nanoTime();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Encodes a packet into a complete frame including the length prefix.
+     * Bodies above the compression threshold get compressed if the peer supports it & it saves space.
+     *
+     * @param packet
+     *          The packet to encode
+     * @return
+     *          The frame
+     * @throws IOException
+     */
+    protected byte[] encodeFrame(AbstractPacket packet) throws IOException {
+        byte[] frame = encodeFrame(getCodec(), packet);
+
+        if (isCompressionEnabled() && frame.length - 4 >= getPacketManager().getCompressionThreshold()) {
+            byte[] compressed = compressFrame(getCompressor(), frame);
+            if (compressed != null) return compressed;
+        }
+
+        return frame;
+    }
+
+    /**
+     * Encodes a packet into an uncompressed frame including the length prefix.
+     *
+     * @param codec
+     *          The codec to use
+     * @param packet
+     *          The packet to encode
+     * @return
+     *          The frame
+     * @throws IOException
+     */
+    static byte[] encodeFrame(PacketCodec codec, AbstractPacket packet) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(0); out.write(0); out.write(0); out.write(0);     // Length placeholder
+        codec.encode(packet, out);
+
+        byte[] frame = out.toByteArray();
+
+        // RET: Length would overlap with the flags!
+        if (frame.length - 4 > FRAME_LENGTH)
+            throw new IOException("Packet too big: " + (frame.length - 4) + " bytes");
+
+        writeInt(frame, 0, frame.length - 4);
+        return frame;
+    }
+
+    /**
+     * Compresses the body of an uncompressed frame.
+     *
+     * @param compressor
+     *          The compressor to use
+     * @param frame
+     *          The uncompressed frame
+     * @return
+     *          The compressed frame | {@code null} if compression did not save any space
+     * @throws IOException
+     */
+    static byte[] compressFrame(Compressor compressor, byte[] frame) throws IOException {
+        int length = frame.length - 4;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 8);
+        for (int i = 0; i < 8; i++) out.write(0);                  // Length & body length placeholder
+        compressor.compress(frame, 4, length, out);
+
+        // RET: Not worth it!
+        if (out.size() >= frame.length)
+            return null;
+
+        byte[] compressed = out.toByteArray();
+        writeInt(compressed, 0, (compressed.length - 4) | FRAME_COMPRESSED);
+        writeInt(compressed, 4, length);
+        return compressed;
+    }
+
+    /**
+     * Checks the length prefix of a received frame before a buffer for it is allocated. Frames above the maximum
+     * transfer size of the packet manager (at least the size of a file chunk) are rejected, since the sender would
+     * have split them into chunks or the reassembled transfer would be dropped anyway.
+     * Note: A rejected frame cannot be skipped reliably, so the transport has to close the connection.
+     *
+     * @param header
+     *          The length prefix of the frame including its flags
+     * @throws IOException
+     *          If the frame is too big
+     */
+    protected void checkFrameLength(int header) throws IOException {
+        int length = header & FRAME_LENGTH;
+        int maxLength = Math.max(getPacketManager().getMaxTransferSize(), CHUNK_HEADER + DEFAULT_FILE_CHUNK_SIZE);
+
+        // RET: Too big!
+        if (length > maxLength)
+            throw new IOException("Frame of " + length + " bytes exceeds the maximum of " + maxLength + " bytes");
+    }
+
+    /**
+     * Handles a received frame. Chunks are collected until their frame is complete.
+     * Note: An invalid frame is dropped without affecting the following frames.
+     *
+     * @param data
+     *          The buffer containing the frame body
+     * @param offset
+     *          The start of the frame body
+     * @param length
+     *          The length of the frame body
+     * @param flags
+     *          The flags of the length prefix ({@link #FRAME_COMPRESSED}, {@link #FRAME_CHUNK})
+     */
+    protected void handleFrame(byte[] data, int offset, int length, int flags) {
+        if (!readSinceIdleCheck) this.readSinceIdleCheck = true;
+
+        PacketManagerMetrics managerMetrics = getPacketManager().getMetrics();
+        if (managerMetrics != null) {
+            managerMetrics.getTraffic().recordIn(length + 4);
+            metrics.recordIn(length + 4);
+        }
+
+        // RET: Part of a file!
+        if ((flags & FRAME_FILE) == FRAME_FILE) {
+            try { handleFileChunk(data, offset, length); }
+            catch (IOException e) {
+                log.error("[JNet] SOCK (" + getName() + ") Received invalid file chunk in " + Thread.currentThread() + "!");
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+            return;
+        }
+
+        // RET: Part of a bigger frame!
+        if ((flags & FRAME_CHUNK) != 0) {
+            try { handleChunk(data, offset, length); }
+            catch (IOException e) {
+                log.error("[JNet] SOCK (" + getName() + ") Received invalid chunk in " + Thread.currentThread() + "!");
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+            return;
+        }
+
+        decodeFrame(data, offset, length, (flags & FRAME_COMPRESSED) != 0);
+    }
+
+    /**
+     * Adds a received chunk to its transfer & handles the frame once all chunks were received.
+     * Transfers above the maximum transfer size or beyond the maximum concurrent transfers of the packet manager
+     * are dropped, so a peer cannot make this side buffer unbounded amounts of data.
+     *
+     * @param data
+     *          The buffer containing the chunk
+     * @param offset
+     *          The start of the chunk (after the length prefix)
+     * @param length
+     *          The length of the chunk
+     * @throws IOException
+     *          If the chunk is invalid. Its transfer is dropped
+     */
+    private void handleChunk(byte[] data, int offset, int length) throws IOException {
+
+        // RET: Chunk too short!
+        if (length < CHUNK_HEADER)
+            throw new IOException("Chunk too short");
+
+        int id = readInt(data, offset);
+        int frameLength = readInt(data, offset + 4);
+        int position = readInt(data, offset + 8);
+        int dataLength = length - CHUNK_HEADER;
+        Reassembly reassembly = reassemblies.get(id);
+
+        if (position == 0) {
+            if (reassembly != null) reassemblies.remove(id);
+
+            // RET: Too big!
+            if (frameLength < 4 || frameLength > getPacketManager().getMaxTransferSize())
+                throw new IOException("Dropped transfer " + id + " of " + frameLength + " bytes");
+
+            // RET: Too many concurrent transfers!
+            if (reassemblies.size() >= getPacketManager().getMaxConcurrentTransfers())
+                throw new IOException("Dropped transfer " + id + ", too many concurrent transfers");
+
+            reassembly = new Reassembly(new byte[frameLength]);
+            reassemblies.put(id, reassembly);
+        }
+
+        // RET: Transfer was dropped before!
+        if (reassembly == null) return;
+
+        // RET: Chunk does not continue the transfer!
+        if (position != reassembly.received || dataLength > frameLength - position || frameLength != reassembly.frame.length) {
+            reassemblies.remove(id);
+            throw new IOException("Dropped transfer " + id + ", chunk at " + position + " out of order");
+        }
+
+        System.arraycopy(data, offset + CHUNK_HEADER, reassembly.frame, position, dataLength);
+        reassembly.received += dataLength;
+
+        // RET: Chunks missing!
+        if (reassembly.received < frameLength) return;
+
+        reassemblies.remove(id);
+        int header = readInt(reassembly.frame, 0);
+
+        // RET: Frame does not fit into the transfer!
+        if ((header & FRAME_CHUNK) != 0 || (header & FRAME_LENGTH) != frameLength - 4)
+            throw new IOException("Invalid frame inside transfer " + id);
+
+        decodeFrame(reassembly.frame, 4, frameLength - 4, (header & FRAME_COMPRESSED) != 0);
+    }
+
+    /**
+     * Hands a received file chunk over to the consumer of its file.
+     * Chunks of files nobody consumes are dropped.
+     *
+     * @param data
+     *          The buffer containing the chunk
+     * @param offset
+     *          The start of the chunk (after the length prefix)
+     * @param length
+     *          The length of the chunk
+     * @throws IOException
+     *          If the chunk is invalid. Its file is aborted
+     */
+    private void handleFileChunk(byte[] data, int offset, int length) throws IOException {
+
+        // RET: Chunk too short!
+        if (length < 4)
+            throw new IOException("File chunk too short");
+
+        int streamId = readInt(data, offset);
+        IncomingFile file;
+        synchronized (incomingFiles) {
+            file = incomingFiles.get(streamId);
+        }
+
+        // RET: Nobody consumes the file!
+        if (file == null) return;
+
+        try {
+            if (!file.offer(data, offset + 4, length - 4))
+                pauseReading(file::flush);
+
+            // RET: Chunks missing!
+            if (!file.isComplete()) return;
+        }
+        catch (IOException e) {
+            file.abort();
+            synchronized (incomingFiles) {
+                incomingFiles.remove(streamId);
+            }
+            throw e;
+        }
+
+        synchronized (incomingFiles) {
+            incomingFiles.remove(streamId);
+        }
+    }
+
+    /**
+     * Stops handling received frames until a blocking task finished. Used once the consumer of a received file is
+     * slower than the network, so its buffer does not grow.
+     * Note: Must only be called by the reading thread. Blocking connections own their reading thread, so the task
+     * simply runs on it.
+     *
+     * @param task
+     *          The task waiting for the consumer
+     */
+    protected void pauseReading(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * Makes the content of a received file readable through {@link FilePacket#getChannel()}.
+     * Note: Must be called by the reading thread before any chunk of the file is handled.
+     *
+     * @param packet
+     *          The received file packet
+     */
+    private void receiveFile(FilePacket packet) {
+        IncomingFile file = new IncomingFile(packet.getSize(), BUFFERED_FILE_CHUNKS);
+        packet.setChannel(file);
+
+        // RET: Empty file, no chunks will follow!
+        if (packet.getSize() == 0) return;
+
+        // RET: Nobody would consume the file!
+        if (getPacketManager().getHandlers(FilePacket.class) == null) {
+            file.close();
+            return;
+        }
+
+        synchronized (incomingFiles) {
+            incomingFiles.put(packet.getStreamId(), file);
+        }
+    }
+
+    /**
+     * Decodes a complete frame body and handles the contained packet.
+     * Packets which would be dropped anyway are skipped after reading their header, so their body is never decoded.
+     *
+     * @param data
+     *          The buffer containing the frame body
+     * @param offset
+     *          The start of the frame body
+     * @param length
+     *          The length of the frame body
+     * @param compressed
+     *          Whether the frame was marked with {@link #FRAME_COMPRESSED}
+     */
+    private void decodeFrame(byte[] data, int offset, int length, boolean compressed) {
+        AbstractPacket packet;
+        int typeId = PacketRegistry.UNREGISTERED;
+        try {
+            byte[] body = data;
+            int bodyOffset = offset, bodyLength = length;
+            if (compressed) {
+                bodyLength = decompressFrame(data, offset, length);
+                body = inflateBuffer;
+                bodyOffset = 0;
+            }
+
+            if (getCodec().readHeader(body, bodyOffset, bodyLength, receivedHeader)) {
+                typeId = receivedHeader.getTypeId();
+
+                // RET: Would be dropped anyway!
+                if (getPacketManager().skipPacket(receivedHeader, this)) return;
+            }
+
+            packet = getCodec().decode(body, bodyOffset, bodyLength);
+        }
+        catch (IOException | RuntimeException e) {
+            log.error("[JNet] SOCK (" + getName() + ") Received invalid packet in " + Thread.currentThread() + "!");
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+            return;
+        }
+        finally {
+            // A single big frame must not pin its buffer for the lifetime of the connection
+            if (inflateBuffer.length > MAX_RETAINED_INFLATE_BUFFER) inflateBuffer = new byte[0];
+        }
+
+        handlePacket(packet, typeId);
+    }
+
+    /**
+     * Decompresses a frame body into the inflate buffer.
+     * The decompressed body is limited to the maximum transfer size of the packet manager, like any other frame.
+     *
+     * @param data
+     *          The buffer containing the compressed frame body
+     * @param offset
+     *          The start of the frame body
+     * @param length
+     *          The length of the frame body
+     * @return
+     *          The length of the decompressed body
+     * @throws IOException
+     */
+    private int decompressFrame(byte[] data, int offset, int length) throws IOException {
+
+        // RET: Compression was never negotiated!
+        if (getCompressor() == null)
+            throw new IOException("Received compressed frame but compression is disabled");
+
+        // RET: Frame too short!
+        if (length < 4)
+            throw new IOException("Compressed frame too short");
+
+        int bodyLength = readInt(data, offset);
+
+        // RET: Corrupt length!
+        if (bodyLength < 0 || (long) bodyLength > (long) (length - 4) * MAX_COMPRESSION_RATIO)
+            throw new IOException("Invalid decompressed length " + bodyLength);
+
+        // RET: Too big!
+        if (bodyLength > getPacketManager().getMaxTransferSize())
+            throw new IOException("Decompressed length " + bodyLength + " exceeds the maximum transfer size");
+
+        if (bodyLength > inflateBuffer.length)
+            inflateBuffer = new byte[Math.max(bodyLength, Math.min(inflateBuffer.length * 2, MAX_RETAINED_INFLATE_BUFFER))];
+
+        getCompressor().decompress(data, offset + 4, length - 4, inflateBuffer, 0, bodyLength);
+        return bodyLength;
+    }
+
+    /**
+     * Hands a received packet over to the packet manager.
+     *
+     * @param packet
+     *          The received packet
+     * @param typeId
+     *          The type id from the header of the packet | {@link PacketRegistry#UNREGISTERED} if unknown
+     */
+    protected void handlePacket(AbstractPacket packet, int typeId) {
+        if (log.isTraceEnabled()) log.trace("[JNet] SOCK (" + getName() + ") Read " + packet);
+
+        // RET: Handled internally!
+        if (packet instanceof HandshakePacket) {
+            handleHandshake((HandshakePacket) packet);
+            return;
+        }
+
+        // RET: Handled internally!
+        if (packet instanceof TimingPacket && ((TimingPacket) packet).isHeartbeat()) {
+            handleHeartbeat((TimingPacket) packet);
+            return;
+        }
+
+        // RET: Consumed while the rest of the file is read, so it must not wait for other handlers!
+        if (packet instanceof FilePacket) {
+            receiveFile((FilePacket) packet);
+            getPacketManager().getFileReceiverExecutor().execute(() -> getPacketManager().handlePacket(packet, this, typeId));
+            return;
+        }
+
+        PacketDispatcher dispatcher = getPacketManager().getDispatcher();
+        if (dispatcher != null)
+            dispatcher.dispatch(this, packet, typeId);
+        else
+            getPacketManager().getEventLoop().dispatch(new RecvPacketEvent(packet, this, typeId));
+    }
+
+    /**
+     * Advertises the capabilities of this side to the peer. Gets called once the connection was set up.
+     * Note: Nothing is sent if there is nothing to negotiate.
+     *
+     * @throws IOException
+     */
+    public void sendHandshake() throws IOException {
+
+        // RET: Compression disabled!
+        if (getCompressor() == null) return;
+
+        sendRaw(new HandshakePacket(getCompressor().getName()));
+    }
+
+    /**
+     * Enables compression if the peer uses the same compressor.
+     *
+     * @param handshake
+     *          The handshake of the peer
+     */
+    private void handleHandshake(HandshakePacket handshake) {
+        this.compressionEnabled = getCompressor() != null && getCompressor().getName().equals(handshake.getCompression());
+        log.debug(String.format("[JNet] SOCK (%s) Compression: %s", getName(), isCompressionEnabled()));
+    }
+
+    /**
+     * Sends a heartbeat & closes the connection if too many heartbeats in a row were not answered.
+     * Gets called periodically by the packet manager once heartbeats are enabled.
+     *
+     * @param maxMissed
+     *          The amount of unanswered heartbeats after which the connection is closed | 0 = never close
+     * @throws IOException
+     */
+    void heartbeat(int maxMissed) throws IOException {
+
+        // RET: Already closed!
+        if (isClosed()) return;
+
+        if (heartbeatPending) {
+            this.missedHeartbeats = missedHeartbeats + 1;
+
+            // RET: Peer is dead!
+            if (maxMissed > 0 && missedHeartbeats >= maxMissed) {
+                log.warn(String.format("[JNet] SOCK (%s) Missed %d heartbeats, closing", getName(), missedHeartbeats));
+                close();
+                return;
+            }
+        }
+
+        // Heartbeats never wait behind other frames, even if the connection is congested
+        if (sendControl(new TimingPacket(System.nanoTime(), true, false)))
+            this.heartbeatPending = true;
+    }
+
+    /**
+     * Answers heartbeats of the peer & measures the round trip time of own heartbeats.
+     *
+     * @param packet
+     *          The received heartbeat or echo
+     */
+    private void handleHeartbeat(TimingPacket packet) {
+
+        // RET: Answer heartbeat of the peer!
+        if (!packet.isEcho()) {
+            try { sendControl(packet.toEcho()); }
+            catch (IOException e) {
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+            return;
+        }
+
+        long rtt = System.nanoTime() - packet.getTimestamp();
+        this.heartbeatPending = false;
+        this.missedHeartbeats = 0;
+        this.rttNanos = rttNanos < 0 ? rtt : rttNanos + (rtt - rttNanos) / 8;
+        if (minRttNanos < 0 || rtt < minRttNanos) this.minRttNanos = rtt;
+        if (rtt > maxRttNanos) this.maxRttNanos = rtt;
+    }
+
+    /**
+     * Sends an internal packet ahead of all other frames without ever blocking on backpressure.
+     *
+     * @param packet
+     *          The packet to send
+     * @return
+     *          {@code true} if queued | {@code false} if dropped because the connection is closed
+     * @throws IOException
+     */
+    private boolean sendControl(AbstractPacket packet) throws IOException {
+
+        // RET: Closed!
+        if (isClosed()) return false;
+
+        queueFrame(encodeFrame(packet), PacketPriority.CONTROL);
+        scheduleControlWrite();
+        return true;
+    }
+
+    /**
+     * Closes the connection if no frame was read for longer than the idle timeout.
+     * Gets called periodically by the packet manager once an idle timeout is set.
+     *
+     * @param now
+     *          The current {@link System#nanoTime()}
+     * @param idleTimeoutNanos
+     *          The idle timeout in nanoseconds
+     * @throws IOException
+     */
+    void closeIfIdle(long now, long idleTimeoutNanos) throws IOException {
+
+        // RET: Active since the last check!
+        if (readSinceIdleCheck) {
+            this.readSinceIdleCheck = false;
+            this.lastActiveNanos = now;
+            return;
+        }
+
+        // RET: Idle for too long!
+        if (now - lastActiveNanos >= idleTimeoutNanos && !isClosed()) {
+            log.debug(String.format("[JNet] SOCK (%s) Idle for %d ms, closing", getName(), (now - lastActiveNanos) / 1_000_000));
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection & notifies the packet manager. Calling it more than once has no effect.
+     * All pending requests of the connection fail with a {@link ConnectionClosedException}, threads waiting for
+     * writability are woken up & unwritten frames are dropped.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+
+        // RET: Already closed!
+        if (!closed.compareAndSet(false, true)) return;
+
+        try {
+            closeTransport();
+        }
+        finally {
+            ConnectionClosedException reason = new ConnectionClosedException(this);
+            releaseWriters(reason);
+            abortIncomingFiles();
+            failPendingRequests(reason);
+            getPacketManager().handleConnectionClosed(this);
+        }
+    }
+
+    /**
+     * Closes the underlying socket.
+     *
+     * @throws IOException
+     */
+    protected void closeTransport() throws IOException {
+        getSocket().close();
+    }
+
+    /**
+     * @return
+     *          {@code true} if the connection was closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+
+    /**
+     * Makes sure the outbound queue gets drained by exactly one writer.
+     * Note: Called after every enqueued frame, so implementations should return quickly if a writer is already active.
+     *
+     * @throws IOException
+     */
+    protected abstract void scheduleWrite() throws IOException;
+
+    /**
+     * Makes sure queued control frames get written without blocking the calling thread. Heartbeats of all
+     * connections are sent by the single scheduler thread of the packet manager, so one dead peer must not stall
+     * the others. Transports whose writers block have to hand the write off to another thread.
+     *
+     * @throws IOException
+     */
+    protected void scheduleControlWrite() throws IOException {
+        scheduleWrite();
+    }
+
+
+    // ======================   BACKPRESSURE
+
+    /**
+     * Queues an encoded frame for writing while respecting the {@link BackpressureMode} of the packet manager.
+     * Frames of {@link PacketPriority#CONTROL} are never held back.
+     *
+     * @param frame
+     *          The complete frame
+     * @param priority
+     *          The priority of the packet inside the frame
+     * @return
+     *          A future that completes once the frame was queued for writing
+     * @throws IOException
+     */
+    protected CompletableFuture<Void> enqueue(byte[] frame, PacketPriority priority) throws IOException {
+        return enqueue(frame, priority, null, getPacketManager().getBackpressureMode());
+    }
+
+    /**
+     * Queues an encoded frame or a file for writing while respecting a {@link BackpressureMode}.
+     *
+     * @param frame
+     *          The complete frame | the announcing frame of the file
+     * @param priority
+     *          The priority of the packet inside the frame
+     * @param file
+     *          The file to send | {@code null} to only send the frame
+     * @param mode
+     *          How to behave once the high watermark was exceeded
+     * @return
+     *          A future that completes once the frame was queued for writing
+     * @throws IOException
+     */
+    private CompletableFuture<Void> enqueue(byte[] frame, PacketPriority priority, FileTransfer file, BackpressureMode mode) throws IOException {
+
+        // RET: Closed!
+        if (isClosed())
+            return failed(new ConnectionClosedException(this));
+
+        // RET: Skip backpressure!
+        if (priority == PacketPriority.CONTROL) {
+            queue(frame, priority, file);
+            scheduleWrite();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        switch (mode) {
+            case BLOCK:
+                awaitWritable();
+
+                // RET: Closed while waiting!
+                if (isClosed())
+                    return failed(new ConnectionClosedException(this));
+                break;
+
+            case FAIL:
+                // RET: Drop the frame!
+                if (!isWritable())
+                    return failed(new BackpressureException(this));
+                break;
+
+            case DELAY:
+                synchronized (deferredFrames) {
+
+                    // RET: Closed in the meantime!
+                    if (isClosed())
+                        return failed(new ConnectionClosedException(this));
+
+                    // RET: Hold back the frame (& keep order with already deferred ones)!
+                    if (!isWritable() || !deferredFrames.isEmpty()) {
+                        CompletableFuture<Void> delayed = new CompletableFuture<>();
+                        deferredFrames.add(new DeferredFrame(frame, priority, file, delayed));
+                        return delayed;
+                    }
+
+                    queue(frame, priority, file);
+                }
+                scheduleWrite();
+                return CompletableFuture.completedFuture(null);
+        }
+
+        queue(frame, priority, file);
+        scheduleWrite();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Adds a frame or a file to the outbound queues.
+     *
+     * @param frame
+     *          The complete frame | the announcing frame of the file
+     * @param priority
+     *          The priority of the packet inside the frame
+     * @param file
+     *          The file to send | {@code null} to only send the frame
+     */
+    private void queue(byte[] frame, PacketPriority priority, FileTransfer file) {
+
+        // RET: Regular frame!
+        if (file == null) {
+            queueFrame(frame, priority);
+            return;
+        }
+
+        // The announcing frame counts as a regular frame
+        framesQueued(frame.length);
+        queueTransfer(file, file.size);
+    }
+
+    /**
+     * Adds a frame to the outbound queue of its priority & updates the writability.
+     * Frames above the chunk size are queued as a transfer instead, which is written as bulk data.
+     *
+     * @param frame
+     *          The complete frame
+     * @param priority
+     *          The priority of the packet inside the frame
+     */
+    private void queueFrame(byte[] frame, PacketPriority priority) {
+        int chunkSize = getPacketManager().getChunkSize();
+
+        // RET: Interleave big frame with the others!
+        if (chunkSize > 0 && frame.length > chunkSize) {
+            queueTransfer(new ChunkedFrame(nextTransferId(), frame, chunkSize), frame.length);
+            return;
+        }
+
+        outboundQueues[priority.ordinal()].add(frame);
+        framesQueued(frame.length);
+    }
+
+    /**
+     * Adds a transfer which is written in chunks.
+     *
+     * @param transfer
+     *          The transfer
+     * @param bytes
+     *          The amount of bytes which count towards {@link #getPendingTransferBytes()}
+     */
+    private void queueTransfer(Transfer transfer, long bytes) {
+        long pending = pendingTransferBytes.addAndGet(bytes) + pendingBytes.get();
+        pendingTransfers.add(transfer);
+
+        // Closed concurrently, make sure the transfer does not leak
+        if (isClosed()) discardTransfers();
+
+        if (isWritable() && getPacketManager().getWriteWatermarks().isAboveHigh(pending, pendingPackets.get()))
+            updateWritability();
+    }
+
+    /**
+     * Updates the pending data after a regular frame was queued.
+     *
+     * @param length
+     *          The length of the frame
+     */
+    private void framesQueued(int length) {
+        long bytes = pendingBytes.addAndGet(length) + pendingTransferBytes.get();
+        int packets = pendingPackets.incrementAndGet();
+        if (isWritable() && getPacketManager().getWriteWatermarks().isAboveHigh(bytes, packets))
+            updateWritability();
+    }
+
+    /**
+     * Returns the next frame to write. Control frames always go first. While bulk data is waiting, one bulk frame
+     * or chunk of a transfer is written after every {@link AbstractPacketManager#getInteractiveWeight()}
+     * interactive frames, so neither can starve the other & a big packet never delays small ones by more than one
+     * chunk.
+     * Note: Must only be called by the writer.
+     *
+     * @return
+     *          The frame | {@code null} if nothing is left to write
+     */
+    protected byte[] pollFrame() {
+        byte[] frame = outboundQueues[PacketPriority.CONTROL.ordinal()].poll();
+
+        // RET: Control frames first!
+        if (frame != null) return frame;
+
+        // RET: Interactive frame as long as the bulk data had its turn!
+        if (interactiveCredit > 0 || !hasBulkFrames()) {
+            frame = outboundQueues[PacketPriority.INTERACTIVE.ordinal()].poll();
+            if (frame != null) {
+                if (interactiveCredit > 0) interactiveCredit--;
+                return frame;
+            }
+        }
+        this.interactiveCredit = Math.max(1, getPacketManager().getInteractiveWeight());
+
+        frame = outboundQueues[PacketPriority.BULK.ordinal()].poll();
+
+        // RET: Bulk frame!
+        if (frame != null) return frame;
+
+        int maxTransfers = Math.max(1, getPacketManager().getMaxConcurrentTransfers());
+        while (activeTransfers.size() < maxTransfers) {
+            Transfer transfer = pendingTransfers.poll();
+            if (transfer == null) break;
+            activeTransfers.add(transfer);
+        }
+
+        Transfer transfer = activeTransfers.poll();
+
+        // RET: No bulk data left (anymore)!
+        if (transfer == null) return outboundQueues[PacketPriority.INTERACTIVE.ordinal()].poll();
+
+        // Round robin between the active transfers
+        byte[] chunk = transfer.nextChunk();
+        if (transfer instanceof FileTransfer && ((FileTransfer) transfer).hasRegion())
+            this.fileRegion = (FileTransfer) transfer;
+
+        if (!transfer.isDone()) {
+            activeTransfers.add(transfer);
+            if (isClosed()) discardTransfers();
+        }
+        return chunk;
+    }
+
+    /**
+     * Checks whether the frame last returned by {@link #pollFrame()} was the header of a file chunk.
+     * In that case the writer has to call {@link #writeFileRegion(WritableByteChannel)} right after the header.
+     *
+     * @return
+     *          {@code true} if file data has to be written next
+     */
+    protected boolean hasFileRegion() {
+        return fileRegion != null;
+    }
+
+    /**
+     * Writes the data of the current file chunk straight from disk using {@link FileChannel#transferTo}.
+     * Note: Must only be called by the writer. The connection is closed if the file cannot be read, as the peer
+     * would otherwise interpret the following frames as file data.
+     *
+     * @param target
+     *          The channel to write to
+     * @return
+     *          {@code true} if the chunk was written completely | {@code false} if the target did not accept more data
+     * @throws IOException
+     */
+    protected boolean writeFileRegion(WritableByteChannel target) throws IOException {
+        FileTransfer transfer = fileRegion;
+
+        try {
+            while (transfer.regionRemaining > 0) {
+                long written = transfer.channel.transferTo(transfer.regionPosition, transfer.regionRemaining, target);
+
+                if (written <= 0) {
+
+                    // RET: Target is full!
+                    if (transfer.channel.size() >= transfer.regionPosition + transfer.regionRemaining)
+                        return false;
+
+                    throw new IOException("File shrank while sending");
+                }
+
+                transfer.regionPosition += written;
+                transfer.regionRemaining -= written;
+            }
+        }
+        catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        this.fileRegion = null;
+        if (transfer.isDone()) transfer.discard();
+
+        PacketManagerMetrics managerMetrics = getPacketManager().getMetrics();
+        if (managerMetrics != null) {
+            managerMetrics.getTraffic().recordOut(transfer.regionLength);
+            metrics.recordOut(transfer.regionLength);
+        }
+        transferWritten(transfer.regionLength);
+        return true;
+    }
+
+    /**
+     * Checks whether frames or transfers were queued. Used by writers after they drained everything.
+     *
+     * @return
+     *          {@code true} if new frames are waiting to be written
+     */
+    protected boolean hasPendingFrames() {
+        for (Queue<byte[]> queue : outboundQueues)
+            if (!queue.isEmpty()) return true;
+        return !pendingTransfers.isEmpty();
+    }
+
+    /**
+     * Checks whether bulk frames or transfers are waiting to be written.
+     *
+     * @return
+     *          {@code true} if bulk data is waiting
+     */
+    private boolean hasBulkFrames() {
+        return !outboundQueues[PacketPriority.BULK.ordinal()].isEmpty()
+                || !activeTransfers.isEmpty() || !pendingTransfers.isEmpty();
+    }
+
+    /**
+     * Checks whether a frame returned by {@link #pollFrame()} is a chunk.
+     *
+     * @param frame
+     *          The frame
+     * @return
+     *          {@code true} if it is a chunk of a transfer
+     */
+    protected static boolean isChunk(byte[] frame) {
+        return (readInt(frame, 0) & FRAME_CHUNK) != 0;
+    }
+
+    /**
+     * Must be called by the writer after a frame returned by {@link #pollFrame()} was written.
+     *
+     * @param frame
+     *          The written frame
+     */
+    protected void frameWritten(byte[] frame) {
+        int length = frame.length;
+
+        PacketManagerMetrics managerMetrics = getPacketManager().getMetrics();
+        if (managerMetrics != null) {
+            managerMetrics.getTraffic().recordOut(length);
+            metrics.recordOut(length);
+        }
+
+        // RET: Chunk of a transfer, file data is accounted once written!
+        if (isChunk(frame)) {
+            if ((readInt(frame, 0) & FRAME_FILE) != FRAME_FILE)
+                transferWritten(length - 4 - CHUNK_HEADER);
+            return;
+        }
+
+        long bytes = pendingBytes.addAndGet(-length) + pendingTransferBytes.get();
+        int packets = pendingPackets.decrementAndGet();
+        if (!isWritable() && getPacketManager().getWriteWatermarks().isAtOrBelowLow(bytes, packets))
+            updateWritability();
+    }
+
+    /**
+     * Updates the pending data after data of a transfer was written.
+     *
+     * @param length
+     *          The amount of written transfer bytes
+     */
+    private void transferWritten(long length) {
+        long bytes = pendingTransferBytes.addAndGet(-length) + pendingBytes.get();
+        if (!isWritable() && getPacketManager().getWriteWatermarks().isAtOrBelowLow(bytes, pendingPackets.get()))
+            updateWritability();
+    }
+
+    /**
+     * Recalculates the writability from the current pending data & notifies waiters and listeners on change.
+     */
+    private void updateWritability() {
+        WriteWatermarks watermarks = getPacketManager().getWriteWatermarks();
+        CompletableFuture<Void> completed;
+
+        synchronized (writabilityLock) {
+            long bytes = pendingBytes.get() + pendingTransferBytes.get();
+            int packets = pendingPackets.get();
+
+            if (isWritable() && watermarks.isAboveHigh(bytes, packets)) {
+                this.writable = false;
+                this.writableFuture = new CompletableFuture<>();
+                completed = null;
+            }
+            else if (!isWritable() && watermarks.isAtOrBelowLow(bytes, packets)) {
+                this.writable = true;
+                completed = writableFuture;
+                writabilityLock.notifyAll();
+            }
+            else return;
+        }
+
+        log.debug(String.format("[JNet] SOCK (%s) Writable: %s", getName(), isWritable()));
+
+        if (completed != null) {
+            completed.complete(null);
+            releaseDeferredFrames();
+        }
+
+        for (Consumer<Connection> listener : writabilityListeners) {
+            try { listener.accept(this); }
+            catch (Exception e) {
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+        }
+    }
+
+    /**
+     * Moves frames held back by {@link BackpressureMode#DELAY} into the outbound queue as long as the connection
+     * stays writable.
+     */
+    private void releaseDeferredFrames() {
+        boolean released = false;
+
+        while (isWritable()) {
+            DeferredFrame deferred;
+            synchronized (deferredFrames) {
+                deferred = deferredFrames.poll();
+
+                // RET: Nothing left!
+                if (deferred == null) break;
+
+                queue(deferred.frame, deferred.priority, deferred.file);
+            }
+            deferred.future.complete(null);
+            released = true;
+        }
+
+        // RET: Nothing to write!
+        if (!released) return;
+
+        try { scheduleWrite(); }
+        catch (IOException e) {
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+    }
+
+    /**
+     * Fails everything waiting on the writability of a closed connection & drops all unwritten frames.
+     *
+     * @param reason
+     *          The exception used to fail deferred frames & the writability future
+     */
+    private void releaseWriters(ConnectionClosedException reason) {
+        CompletableFuture<Void> waiting;
+        synchronized (writabilityLock) {
+            waiting = writableFuture;
+            writabilityLock.notifyAll();
+        }
+        waiting.completeExceptionally(reason);
+
+        List<CompletableFuture<Void>> deferred = new ArrayList<>();
+        synchronized (deferredFrames) {
+            DeferredFrame frame;
+            while ((frame = deferredFrames.poll()) != null) {
+                deferred.add(frame.future);
+                if (frame.file != null) frame.file.discard();
+            }
+        }
+        for (CompletableFuture<Void> future : deferred)
+            future.completeExceptionally(reason);
+
+        for (Queue<byte[]> queue : outboundQueues)
+            queue.clear();
+        discardTransfers();
+    }
+
+    /**
+     * Drops all queued transfers & closes their files.
+     */
+    private void discardTransfers() {
+        Transfer transfer;
+        while ((transfer = pendingTransfers.poll()) != null) transfer.discard();
+        while ((transfer = activeTransfers.poll()) != null) transfer.discard();
+
+        FileTransfer region = fileRegion;
+        if (region != null) region.discard();
+    }
+
+    /**
+     * Fails the consumers of all files which are currently received.
+     */
+    private void abortIncomingFiles() {
+        List<IncomingFile> files = new ArrayList<>();
+        synchronized (incomingFiles) {
+            incomingFiles.forEachValue(files::add);
+            incomingFiles.clear();
+        }
+
+        for (IncomingFile file : files)
+            file.abort();
+    }
+
+    /**
+     * Blocks the current thread until the connection is writable or closed.
+     *
+     * @throws InterruptedIOException
+     *          If the thread was interrupted while waiting
+     */
+    public void awaitWritable() throws InterruptedIOException {
+        synchronized (writabilityLock) {
+            while (!isWritable() && !isClosed()) {
+                try { writabilityLock.wait(); }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for " + getName() + " to become writable");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a future which completes once the connection is writable.
+     *
+     * @return
+     *          The future (already completed if the connection is writable | failed once the connection is closed)
+     */
+    public CompletableFuture<Void> whenWritable() {
+        synchronized (writabilityLock) {
+            return writableFuture;
+        }
+    }
+
+    /**
+     * Returns the amount of bytes queued but not yet written. Queued transfers are not included (see
+     * {@link #getPendingTransferBytes()}).
+     *
+     * @return
+     *          The pending bytes
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Returns the amount of packets queued but not yet written.
+     *
+     * @return
+     *          The pending packets
+     */
+    public int getPendingPackets() {
+        return pendingPackets.get();
+    }
+
+    /**
+     * Returns the amount of bytes of big packets & files which are queued for chunked writing but not yet written.
+     *
+     * @return
+     *          The pending transfer bytes
+     */
+    public long getPendingTransferBytes() {
+        return pendingTransferBytes.get();
+    }
+
+    /**
+     * Adds a listener which gets called whenever {@link #isWritable()} changes.
+     *
+     * @param listener
+     *          The listener
+     */
+    public void addWritabilityListener(Consumer<Connection> listener) {
+        writabilityListeners.add(listener);
+    }
 
     /**
-     * The parent AbstractPacketManager which will handle any packets.
+     * Removes a writability listener.
+     *
+     * @param listener
+     *          The listener
+     * @return
+     *          {@code true} if the listener was removed | {@code false} if it was not registered
      */
-    private final AbstractPacketManager packetManager;
+    public boolean removeWritabilityListener(Consumer<Connection> listener) {
+        return writabilityListeners.remove(listener);
+    }
+
+
+    // ======================   CALLBACK MANAGEMENT
 
     /**
-     * Reference to the {@link Socket} instance.
+     * Returns the next request sequence id of this connection.
+     *
+     * @return
+     *          The sequence id (never 0)
      */
-    private final Socket socket;
+    public long nextSequenceId() {
+        return sequence.incrementAndGet();
+    }
 
     /**
-     * Wrapper around the sockets {@link java.io.OutputStream}.
+     * Stores a callback registered using {@link CorrelationMode#SEQUENCE}.
+     *
+     * @param callback
+     *          The callback
      */
-    private final ObjectOutputStream outputStream;
+    void addPendingCallback(PendingCallback callback) {
+        synchronized (pendingCallbacks) {
+            pendingCallbacks.put(callback.getSequenceId(), callback);
+        }
+    }
 
     /**
-     * Wrapper around the sockets {@link java.io.InputStream}.
+     * Removes the callback of a request.
+     *
+     * @param sequenceId
+     *          The sequence id of the request
+     * @return
+     *          The callback | {@code null} if there is none
      */
-    private final ObjectInputStream inputStream;
+    PendingCallback takePendingCallback(long sequenceId) {
+        synchronized (pendingCallbacks) {
+            return pendingCallbacks.remove(sequenceId);
+        }
+    }
 
+    /**
+     * Removes a specific callback.
+     *
+     * @param sequenceId
+     *          The sequence id of the request
+     * @param callback
+     *          The expected callback
+     * @return
+     *          {@code true} if removed | {@code false} if not
+     */
+    boolean removePendingCallback(long sequenceId, PendingCallback callback) {
+        synchronized (pendingCallbacks) {
+            return pendingCallbacks.remove(sequenceId, callback);
+        }
+    }
 
-    // ======================   CONSTRUCTOR
+    /**
+     * Indexes a callback registered using {@link CorrelationMode#UUID}.
+     *
+     * @param callback
+     *          The callback
+     */
+    void trackCallback(PendingCallback callback) {
+        trackedCallbacks.add(callback);
+    }
 
-    public Connection(AbstractPacketManager packetManager, Socket socket, String name) throws IOException {
-        this.name = name;
-        this.packetManager = packetManager;
-        this.socket = socket;
-        this.outputStream = new ObjectOutputStream(getSocket().getOutputStream());
-        this.inputStream = new ObjectInputStream(getSocket().getInputStream());
+    /**
+     * Removes a callback registered using {@link CorrelationMode#UUID} from the index.
+     *
+     * @param callback
+     *          The callback
+     */
+    void untrackCallback(PendingCallback callback) {
+        trackedCallbacks.remove(callback);
+    }
+
+    /**
+     * Returns the amount of callbacks registered using {@link CorrelationMode#SEQUENCE}.
+     *
+     * @return
+     *          The amount
+     */
+    public int getPendingCallbackCount() {
+        synchronized (pendingCallbacks) {
+            return pendingCallbacks.size();
+        }
     }
 
-    public Connection(AbstractPacketManager packetManager, Socket socket) throws IOException {
-        this(packetManager, socket, UUID.randomUUID().toString());
+    /**
+     * Fails every request sent on this connection which did not receive a response yet, including queued ones.
+     * The packet manager may take them over instead (see {@link AbstractPacketManager#retainRequest}).
+     *
+     * @param reason
+     *          The exception used to fail the callbacks
+     */
+    private void failPendingRequests(ConnectionClosedException reason) {
+        List<PendingCallback> pending = new ArrayList<>();
+
+        synchronized (pendingCallbacks) {
+            pendingCallbacks.forEachValue(pending::add);
+        }
+        synchronized (queuedRequests) {
+            pending.addAll(queuedRequests);
+        }
+        pending.addAll(trackedCallbacks);
+
+        // Callbacks contained twice are only failed once
+        for (PendingCallback callback : pending)
+            failRequest(callback, reason);
     }
 
-    // ======================   BUSINESS LOGIC
+    /**
+     * Fails a request unless the packet manager takes it over because the connection was closed.
+     *
+     * @param callback
+     *          The callback of the request
+     * @param reason
+     *          The exception used to fail the callback
+     */
+    private void failRequest(PendingCallback callback, Throwable reason) {
 
-    @Override
-    public void run() {
-        log.debug(String.format("[JNet] Started new ConnectionThread for %s", getSocket().getRemoteSocketAddress().toString()));
+        // RET: Already completed!
+        if (!callback.detach()) return;
 
-        Thread.currentThread().setName(
-                String.format(
-                        "ConnectionThread for %s |%s",
-                        getSocket().getRemoteSocketAddress().toString(),
-                        Thread.currentThread().getName()
-                )
-        );
+        // RET: Sent again later!
+        if (reason instanceof ConnectionClosedException
+                && getPacketManager().retainRequest(this, callback.getPacket(), callback.getFuture())) {
+            callback.abandon();
+            return;
+        }
 
-        while (!Thread.currentThread().isInterrupted() && getPacketManager().getEventLoop().isRunning()) {
-            try {
-                AbstractPacket packet = recv();
+        callback.except(reason);
+    }
+
+
+    // ======================   IN-FLIGHT WINDOW
+
+    /**
+     * Takes a slot of the in-flight window for a request or queues the request if the window is full.
+     *
+     * @param callback
+     *          The callback of the request
+     * @return
+     *          {@code true} if the request may be sent now | {@code false} if it was queued
+     */
+    private boolean acquireRequest(PendingCallback callback) {
+        int window = getPacketManager().getInFlightWindow();
 
-                log.trace("[JNet] SOCK (" + getName() + ") Read " + packet);
+        synchronized (queuedRequests) {
 
-                getPacketManager().getEventLoop().dispatch(new RecvPacketEvent(packet, this));
+            // RET: Window is full!
+            if (window > 0 && inFlightRequests >= window) {
+                queuedRequests.add(callback);
+                return false;
             }
-            catch (IOException | ClassNotFoundException e) {
-                log.error("[JNet] SOCK (" + getName() + ") Received invalid packet in " + Thread.currentThread() + "!");
-                log.error(ExceptionUtils.getStackTraceAsString(e));
+
+            inFlightRequests++;
+            callback.inFlight = true;
+            return true;
+        }
+    }
+
+    /**
+     * Gets called once a request was answered, failed or timed out. Hands its slot over to the next queued request.
+     * The next request is written by the request executor of the packet manager, since this gets called by I/O &
+     * timer threads which must not wait for backpressure. Released requests are written in order.
+     *
+     * @param callback
+     *          The callback of the finished request
+     */
+    void releaseRequest(PendingCallback callback) {
+        synchronized (queuedRequests) {
+
+            // RET: Request never left the queue!
+            if (!callback.inFlight) {
+                queuedRequests.remove(callback);
+                return;
+            }
+
+            callback.inFlight = false;
+
+            PendingCallback next;
+            do next = queuedRequests.poll();
+            while (next != null && next.getFuture().isDone());
+
+            // RET: Nothing queued!
+            if (next == null) {
+                inFlightRequests--;
+                return;
+            }
+
+            next.inFlight = true;
+            releasedRequests.add(next);
+
+            // RET: Already being written!
+            if (transmittingReleased) return;
+            this.transmittingReleased = true;
+        }
+
+        try { getPacketManager().getRequestExecutor().execute(this::transmitReleased); }
+        catch (RejectedExecutionException e) {
+            transmitReleased();
+        }
+    }
+
+    /**
+     * Writes the released requests until none is left. Runs on the request executor of the packet manager.
+     */
+    private void transmitReleased() {
+        while (true) {
+            PendingCallback next;
+            synchronized (queuedRequests) {
+                next = releasedRequests.poll();
+
+                // RET: Everything written!
+                if (next == null) {
+                    this.transmittingReleased = false;
+                    return;
+                }
+            }
+
+            try {
+                transmit(next);
+            }
+            catch (IOException e) {
+                next.fail(e);
             }
         }
+    }
 
+    /**
+     * Returns the amount of sent requests without a response.
+     *
+     * @return
+     *          The in-flight requests
+     */
+    public int getInFlightRequests() {
+        synchronized (queuedRequests) {
+            return inFlightRequests;
+        }
     }
 
     /**
-     * Receives an {@link Object} and returns it as a {@link AbstractPacket}.
+     * Returns the amount of requests waiting for a free slot in the in-flight window.
      *
-     * @return The returned packet
-     * @throws IOException
-     * @throws ClassNotFoundException
+     * @return
+     *          The queued requests
      */
-    private AbstractPacket recv() throws IOException, ClassNotFoundException {
-        return (AbstractPacket) getInputStream().readObject();
+    public int getQueuedRequests() {
+        synchronized (queuedRequests) {
+            return queuedRequests.size();
+        }
     }
 
 
@@ -109,18 +1812,51 @@ public class Connection implements Runnable {
 
     /**
      * Sends a {@link AbstractPacket} over the socket connection.
+     * It is safe to call this from multiple threads concurrently.
      *
      * @param packet
      *          The packet to send
      * @param flush
-     *          Whether to flush the channel afterwards
+     *          Kept for compatibility. Frames are always flushed once the outbound queue is drained or the
+     *          flush latency budget of the packet manager expired
+     * @return
+     *          A future that completes once the packet was queued for writing (see {@link BackpressureMode})
+     * @throws IOException
+     */
+    public CompletableFuture<Void> sendRaw(AbstractPacket packet, boolean flush) throws IOException {
+        CompletableFuture<Void> queued = enqueue(encodeFrame(packet), packet.getPriority());
+        if (log.isTraceEnabled()) log.trace(String.format("[JNet] SOCK (%s) Queued %s", getName(), packet.toString()));
+        return queued;
+    }
+
+    /**
+     * Sends an already encoded packet. Used to write the same frame to many connections without encoding it again.
+     *
+     * @param encoded
+     *          The encoded packet
+     * @return
+     *          A future that completes once the packet was queued for writing (see {@link BackpressureMode})
+     * @throws IOException
+     */
+    public CompletableFuture<Void> sendRaw(EncodedPacket encoded) throws IOException {
+        return sendRaw(encoded, getPacketManager().getBackpressureMode());
+    }
+
+    /**
+     * Sends an already encoded packet while overriding the {@link BackpressureMode} of the packet manager.
+     *
+     * @param encoded
+     *          The encoded packet
+     * @param mode
+     *          How to behave once the high watermark was exceeded
+     * @return
+     *          A future that completes once the packet was queued for writing (see {@link BackpressureMode})
      * @throws IOException
      */
-    public void sendRaw(AbstractPacket packet, boolean flush) throws IOException {
-        getOutputStream().writeObject(packet);
-        if (flush)
-            getOutputStream().flush();
-        log.trace(String.format("[JNet] SOCK (%s) Writing %s, flush: %s", getName(), packet.toString(), flush));
+    public CompletableFuture<Void> sendRaw(EncodedPacket encoded, BackpressureMode mode) throws IOException {
+        CompletableFuture<Void> queued = enqueue(encoded.getFrame(this), encoded.getPacket().getPriority(), null, mode);
+        if (log.isTraceEnabled()) log.trace(String.format("[JNet] SOCK (%s) Queued encoded %s", getName(), encoded.getPacket().toString()));
+        return queued;
     }
 
     /**
@@ -128,15 +1864,19 @@ public class Connection implements Runnable {
      *
      * @param packet
      *          The packet to send
+     * @return
+     *          A future that completes once the packet was queued for writing (see {@link BackpressureMode})
      * @throws IOException
      */
-    public void sendRaw(AbstractPacket packet) throws IOException {
-        sendRaw(packet, false);
+    public CompletableFuture<Void> sendRaw(AbstractPacket packet) throws IOException {
+        return sendRaw(packet, false);
     }
 
     /**
      * Wrapper around {@link #send(AbstractPacket, boolean)} that returns callback that gets completed when
      * a packet with matching id is received.
+     * If the in-flight window of the packet manager is full, the packet is queued locally & sent once a response
+     * for an earlier request arrived.
      *
      * @param packet
      *          The packet to send
@@ -146,8 +1886,36 @@ public class Connection implements Runnable {
      */
     public CompletableFuture<AbstractPacket> send(AbstractPacket packet, boolean flush) throws IOException {
         CompletableFuture<AbstractPacket> future = new CompletableFuture<>();
-        getPacketManager().addCallback(packet, future);
-        sendRaw(packet, flush);
+        PendingCallback callback = getPacketManager().registerCallback(packet, future, this);
+
+        // RET: Duplicate id, send without callback!
+        if (callback == null) {
+            sendRaw(packet, flush);
+            return future;
+        }
+
+        // RET: Queued until the window has space!
+        if (!acquireRequest(callback))
+            return future;
+
+        try {
+            transmit(callback);
+        }
+        catch (IOException e) {
+
+            // RET: Closed while writing, so the request is treated like all others lost with the connection!
+            if (isClosed()) {
+                failRequest(callback, new ConnectionClosedException(this));
+                return future;
+            }
+
+            if (callback.detach()) {
+                callback.cancel();
+                callback.release();
+            }
+            throw e;
+        }
+
         return future;
     }
 
@@ -165,8 +1933,152 @@ public class Connection implements Runnable {
     }
 
 
+    /**
+     * Sends a file without loading it into memory. The file is announced by a {@link FilePacket} carrying the
+     * metadata, its content follows in chunks which are interleaved with other packets & written straight from
+     * disk.
+     * The returned callback completes once the receiver replies to the {@link FilePacket}.
+     * The file is queued respecting the {@link BackpressureMode} & its size counts towards the byte limits of the
+     * {@link WriteWatermarks} until it is written. If it cannot be queued, the callback fails.
+     * Note: File transfers do not occupy a slot of the in-flight window.
+     *
+     * @param file
+     *          The file to send
+     * @param metadata
+     *          Custom data describing the file | {@code null} for none
+     * @return
+     *          The callback
+     * @throws IOException
+     *          If the file cannot be opened
+     */
+    public CompletableFuture<AbstractPacket> sendFile(Path file, Map<String, String> metadata) throws IOException {
+        CompletableFuture<AbstractPacket> future = new CompletableFuture<>();
+
+        // RET: Closed, so no callback is left behind waiting for a response!
+        if (isClosed()) {
+            future.completeExceptionally(new ConnectionClosedException(this));
+            return future;
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        PendingCallback registered = null;
+
+        try {
+            long size = channel.size();
+            FilePacket packet = new FilePacket(nextTransferId(), size, metadata);
+            int chunkSize = getPacketManager().getChunkSize() > 0 ? getPacketManager().getChunkSize() : DEFAULT_FILE_CHUNK_SIZE;
+
+            // Registering assigns the ids of the request, so it has to happen before encoding
+            PendingCallback callback = registered = getPacketManager().registerCallback(packet, future, this);
+            byte[] frame = encodeFrame(packet);
+
+            FileTransfer transfer = new FileTransfer(packet.getStreamId(), frame, channel, size, chunkSize);
+            enqueue(frame, packet.getPriority(), transfer, getPacketManager().getBackpressureMode()).exceptionally(err -> {
+                transfer.discard();
+                if (callback != null) callback.fail(err);
+                return null;
+            });
+            if (log.isTraceEnabled()) log.trace(String.format("[JNet] SOCK (%s) Queued file %s (%d bytes)", getName(), file, size));
+            return future;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            if (registered != null && registered.detach())
+                registered.abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a request that holds a slot in the in-flight window.
+     *
+     * @param callback
+     *          The callback of the request
+     * @throws IOException
+     */
+    private void transmit(PendingCallback callback) throws IOException {
+        sendRaw(callback.getPacket()).exceptionally(err -> {
+            failRequest(callback, err);
+            return null;
+        });
+    }
+
+
     // ======================   HELPERS
 
+    /**
+     * Returns the next transfer id of this connection.
+     *
+     * @return
+     *          The transfer id (never 0)
+     */
+    private int nextTransferId() {
+        int id;
+        do id = transferIds.incrementAndGet();
+        while (id == 0);
+        return id;
+    }
+
+    /**
+     * Creates one outbound queue per {@link PacketPriority}.
+     *
+     * @return
+     *          The queues indexed by the ordinal of their priority
+     */
+    @SuppressWarnings("unchecked")
+    private static Queue<byte[]>[] newOutboundQueues() {
+        Queue<byte[]>[] queues = (Queue<byte[]>[]) new Queue<?>[PacketPriority.values().length];
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new ConcurrentLinkedQueue<>();
+        return queues;
+    }
+
+    /**
+     * Creates an already failed future.
+     *
+     * @param throwable
+     *          The reason
+     * @return
+     *          The failed future
+     */
+    private static CompletableFuture<Void> failed(Throwable throwable) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(throwable);
+        return failed;
+    }
+
+    /**
+     * Writes a big endian int into a buffer.
+     *
+     * @param buffer
+     *          The buffer
+     * @param index
+     *          The index of the first byte
+     * @param value
+     *          The value
+     */
+    private static void writeInt(byte[] buffer, int index, int value) {
+        buffer[index] = (byte) (value >>> 24);
+        buffer[index + 1] = (byte) (value >>> 16);
+        buffer[index + 2] = (byte) (value >>> 8);
+        buffer[index + 3] = (byte) value;
+    }
+
+    /**
+     * Reads a big endian int from a buffer.
+     *
+     * @param buffer
+     *          The buffer
+     * @param index
+     *          The index of the first byte
+     * @return
+     *          The value
+     */
+    private static int readInt(byte[] buffer, int index) {
+        return ((buffer[index] & 0xFF) << 24) | ((buffer[index + 1] & 0xFF) << 16)
+                | ((buffer[index + 2] & 0xFF) << 8) | (buffer[index + 3] & 0xFF);
+    }
+
     /**
      * Updates the name locally.
      *
@@ -179,6 +2091,8 @@ public class Connection implements Runnable {
 
     /**
      * Updates the name locally and on connected peers.
+     * The peer does not reply, so the {@link NameChangePacket} is sent without a callback & does not occupy a slot
+     * of the in-flight window.
      *
      * @param name
      *          The new name to use
@@ -188,11 +2102,185 @@ public class Connection implements Runnable {
         String oldName = getName();
         this.name = name;
 
-        send(new NameChangePacket(oldName, name))
+        sendRaw(new NameChangePacket(oldName, name))
             .exceptionally(err -> {
-                err.printStackTrace();  // TODO: fix nicer
+                if (!isClosed()) log.warn(String.format("[JNet] SOCK (%s) Could not announce the new name: %s", getName(), err));
                 return null;
             });
     }
 
+
+
+    // ======================   TRANSFERS
+
+    /**
+     * Data which is written in chunks interleaved with other frames. Only touched by the writer once queued.
+     */
+    private abstract static class Transfer {
+
+        /**
+         * Builds the next frame of the transfer.
+         *
+         * @return
+         *          The frame
+         */
+        abstract byte[] nextChunk();
+
+        /**
+         * @return
+         *          {@code true} if all frames were returned
+         */
+        abstract boolean isDone();
+
+        /**
+         * Releases resources held by the transfer.
+         */
+        void discard() {
+        }
+
+    }
+
+    /**
+     * A frame above the chunk size which is split into {@link #FRAME_CHUNK} frames.
+     */
+    private static final class ChunkedFrame extends Transfer {
+
+        private final int id;
+        private final byte[] frame;
+        private final int chunkSize;
+        private int position;
+
+        ChunkedFrame(int id, byte[] frame, int chunkSize) {
+            this.id = id;
+            this.frame = frame;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        byte[] nextChunk() {
+            int length = Math.min(chunkSize, frame.length - position);
+            byte[] chunk = new byte[4 + CHUNK_HEADER + length];
+
+            writeInt(chunk, 0, (CHUNK_HEADER + length) | FRAME_CHUNK);
+            writeInt(chunk, 4, id);
+            writeInt(chunk, 8, frame.length);
+            writeInt(chunk, 12, position);
+            System.arraycopy(frame, position, chunk, 4 + CHUNK_HEADER, length);
+
+            position += length;
+            return chunk;
+        }
+
+        @Override
+        boolean isDone() {
+            return position >= frame.length;
+        }
+
+    }
+
+    /**
+     * A file which is sent as its {@link FilePacket} frame followed by {@link #FRAME_FILE} chunks. Only the chunk
+     * headers are built in memory, the data is written by {@link #writeFileRegion(WritableByteChannel)}.
+     */
+    private static final class FileTransfer extends Transfer {
+
+        private final int streamId;
+        private final FileChannel channel;
+        private final long size;
+        private final int chunkSize;
+        private byte[] packetFrame;
+        private long position;
+
+        /**
+         * The part of the file belonging to the last returned chunk header.
+         */
+        private long regionPosition, regionRemaining;
+        private int regionLength;
+
+        FileTransfer(int streamId, byte[] packetFrame, FileChannel channel, long size, int chunkSize) {
+            this.streamId = streamId;
+            this.packetFrame = packetFrame;
+            this.channel = channel;
+            this.size = size;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        byte[] nextChunk() {
+
+            // RET: Announce the file first!
+            if (packetFrame != null) {
+                byte[] frame = packetFrame;
+                this.packetFrame = null;
+                return frame;
+            }
+
+            int length = (int) Math.min(chunkSize, size - position);
+            byte[] header = new byte[8];
+            writeInt(header, 0, (4 + length) | FRAME_FILE);
+            writeInt(header, 4, streamId);
+
+            this.regionPosition = position;
+            this.regionRemaining = length;
+            this.regionLength = length;
+            position += length;
+            return header;
+        }
+
+        /**
+         * @return
+         *          {@code true} if the data of the last returned chunk header was not written yet
+         */
+        boolean hasRegion() {
+            return regionRemaining > 0;
+        }
+
+        @Override
+        boolean isDone() {
+            return packetFrame == null && position >= size;
+        }
+
+        @Override
+        void discard() {
+            try { channel.close(); }
+            catch (IOException e) {
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+        }
+
+    }
+
+    /**
+     * A frame or file held back by {@link BackpressureMode#DELAY}.
+     */
+    private static final class DeferredFrame {
+
+        private final byte[] frame;
+        private final PacketPriority priority;
+        private final FileTransfer file;
+        private final CompletableFuture<Void> future;
+
+        DeferredFrame(byte[] frame, PacketPriority priority, FileTransfer file, CompletableFuture<Void> future) {
+            this.frame = frame;
+            this.priority = priority;
+            this.file = file;
+            this.future = future;
+        }
+
+    }
+
+    /**
+     * A transfer which is partially received. Only touched by the reading thread.
+     */
+    private static final class Reassembly {
+
+        private final byte[] frame;
+        private int received;
+
+        Reassembly(byte[] frame) {
+            this.frame = frame;
+        }
+
+    }
+
 }
@@ -0,0 +1,21 @@
+package de.maximilianheidenreich.jnet.net;
+
+/**
+ * Defines how responses are matched to the callbacks of sent requests.
+ */
+public enum CorrelationMode {
+
+    /**
+     * Every request gets a random {@link java.util.UUID} & the response has to carry the same id.
+     * Callbacks of all connections are stored in one map of the packet manager.
+     */
+    UUID,
+
+    /**
+     * Every request gets a per connection, monotonically increasing {@code long} sequence id & the response
+     * refers to it through its correlation id (see {@link de.maximilianheidenreich.jnet.packets.AbstractPacket#replyTo}).
+     * Callbacks are stored per connection in a primitive map, so sending does not generate UUIDs or box keys.
+     */
+    SEQUENCE
+
+}
@@ -0,0 +1,94 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.codec.Compressor;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * A packet which was encoded into an immutable frame once, so it can be written to any amount of connections of
+ * the same packet manager without encoding it again.
+ * The compressed variant of the frame is created lazily the first time a connection with enabled compression needs it.
+ */
+@Getter
+public class EncodedPacket {
+
+    // ======================   VARS
+
+    /**
+     * The encoded packet.
+     */
+    private final AbstractPacket packet;
+
+    /**
+     * The uncompressed frame. Must not be modified as it is shared by all outbound queues.
+     */
+    private final byte[] frame;
+
+    /**
+     * The compressor of the packet manager | {@code null} if compression is disabled.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Compressor compressor;
+
+    /**
+     * The minimum body size which gets compressed.
+     */
+    @Getter(AccessLevel.NONE)
+    private final int compressionThreshold;
+
+    /**
+     * The compressed frame | the uncompressed one if compression did not save space | {@code null} if not created yet.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile byte[] compressedFrame;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Encodes a packet using the codec of a packet manager.
+     *
+     * @param packetManager
+     *          The packet manager whose connections will send the packet
+     * @param packet
+     *          The packet to encode
+     * @throws IOException
+     */
+    public EncodedPacket(AbstractPacketManager packetManager, AbstractPacket packet) throws IOException {
+        this.packet = packet;
+        this.frame = Connection.encodeFrame(packetManager.getCodec(), packet);
+        this.compressor = packetManager.getCompressor();
+        this.compressionThreshold = packetManager.getCompressionThreshold();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the frame to write to a connection.
+     *
+     * @param connection
+     *          The target connection
+     * @return
+     *          The compressed frame if the connection negotiated compression & it saves space | the uncompressed frame
+     * @throws IOException
+     */
+    byte[] getFrame(Connection connection) throws IOException {
+
+        // RET: No compression!
+        if (compressor == null || !connection.isCompressionEnabled() || frame.length - 4 < compressionThreshold)
+            return frame;
+
+        // Racing threads may both compress, which is harmless
+        byte[] compressed = compressedFrame;
+        if (compressed == null) {
+            compressed = Connection.compressFrame(compressor, frame);
+            this.compressedFrame = compressed = compressed != null ? compressed : frame;
+        }
+        return compressed;
+    }
+
+}
@@ -0,0 +1,207 @@
+package de.maximilianheidenreich.jnet.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The content of a file which is received in chunks. The reading thread of the connection adds chunks while a
+ * packet handler consumes them. At most a fixed amount of chunks is buffered, so a slow consumer pauses reading
+ * from the connection instead of filling the heap (see {@link Connection#pauseReading(Runnable)}).
+ */
+class IncomingFile implements ReadableByteChannel {
+
+    // ======================   VARS
+
+    /**
+     * Queued once the connection was closed before the file was complete.
+     */
+    private static final byte[] ABORTED = new byte[0];
+
+    /**
+     * Received chunks which were not consumed yet.
+     */
+    private final BlockingQueue<byte[]> chunks;
+
+    /**
+     * The size of the file in bytes.
+     */
+    private final long size;
+
+    /**
+     * The amount of received bytes. Only touched by the reading thread of the connection.
+     */
+    private long received;
+
+    /**
+     * A received chunk which did not fit into the buffer | {@code null} if none. Moved into the buffer by
+     * {@link #flush()}.
+     */
+    private volatile byte[] pending;
+
+    /**
+     * The amount of consumed bytes. Only touched by the consumer.
+     */
+    private long consumed;
+
+    /**
+     * The chunk currently consumed & the position inside of it. Only touched by the consumer.
+     */
+    private byte[] current;
+    private int currentOffset;
+
+    /**
+     * Whether the consumer still reads from this channel.
+     */
+    private volatile boolean open;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new IncomingFile.
+     *
+     * @param size
+     *          The size of the file in bytes
+     * @param bufferedChunks
+     *          The maximum amount of buffered chunks
+     */
+    IncomingFile(long size, int bufferedChunks) {
+        this.chunks = new ArrayBlockingQueue<>(Math.max(1, bufferedChunks));
+        this.size = size;
+        this.open = true;
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Adds a received chunk without blocking. Chunks are dropped once the consumer closed the channel.
+     * If the buffer is full, the chunk is kept until {@link #flush()} moved it into the buffer. No further chunk may
+     * be added before that.
+     *
+     * @param data
+     *          The buffer containing the chunk
+     * @param offset
+     *          The start of the chunk
+     * @param length
+     *          The length of the chunk
+     * @return
+     *          {@code true} if the chunk was buffered | {@code false} if it has to be flushed
+     * @throws IOException
+     *          If the chunk exceeds the size of the file
+     */
+    boolean offer(byte[] data, int offset, int length) throws IOException {
+
+        // RET: More data than announced!
+        if (length > size - received)
+            throw new IOException("File chunk exceeds announced size of " + size + " bytes");
+
+        received += length;
+
+        // RET: Nobody reads it anymore!
+        if (!open) return true;
+
+        byte[] chunk = Arrays.copyOfRange(data, offset, offset + length);
+
+        // RET: Consumer is too slow!
+        if (!chunks.offer(chunk)) {
+            this.pending = chunk;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the chunk which did not fit into the buffer. Blocks until the consumer made room. The file is aborted
+     * if the thread gets interrupted.
+     */
+    void flush() {
+        byte[] chunk = pending;
+        this.pending = null;
+
+        // RET: Nothing left over or nobody reads it anymore!
+        if (chunk == null || !open) return;
+
+        try { chunks.put(chunk); }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+        }
+    }
+
+    /**
+     * @return
+     *          {@code true} if every chunk of the file was received
+     */
+    boolean isComplete() {
+        return received == size;
+    }
+
+    /**
+     * Makes the consumer fail because the rest of the file will never arrive.
+     */
+    void abort() {
+        this.pending = null;
+
+        // A concurrent flush may take the room again
+        do chunks.clear();
+        while (!chunks.offer(ABORTED));
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+
+        // RET: Closed!
+        if (!open) throw new ClosedChannelException();
+
+        // RET: Whole file consumed!
+        if (consumed == size) return -1;
+
+        // RET: Nothing requested!
+        if (!dst.hasRemaining()) return 0;
+
+        while (current == null || currentOffset == current.length) {
+            try { current = chunks.take(); }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for file chunk");
+            }
+            currentOffset = 0;
+
+            // RET: Connection closed before the file was complete!
+            if (current == ABORTED) {
+                chunks.offer(ABORTED);
+                current = null;
+                throw new IOException("Connection closed after " + consumed + " of " + size + " bytes");
+            }
+        }
+
+        int length = Math.min(dst.remaining(), current.length - currentOffset);
+        dst.put(current, currentOffset, length);
+        currentOffset += length;
+        consumed += length;
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Stops buffering chunks. The rest of the file is dropped while it is received.
+     */
+    @Override
+    public void close() {
+        this.open = false;
+        chunks.clear();
+    }
+
+}
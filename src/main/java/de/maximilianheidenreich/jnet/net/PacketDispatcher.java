@@ -0,0 +1,273 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketPriority;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import de.maximilianheidenreich.jnet.utils.DaemonThreadFactory;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs packet handlers on a fixed amount of single threaded lanes.
+ * Every {@link Connection} is hashed to exactly one lane, so packets of one connection are handled in order while
+ * different connections are handled in parallel.
+ * Prioritized lanes order waiting tasks by their {@link PacketPriority}, so control packets never wait behind bulk
+ * data. The order is then only kept between packets of the same priority.
+ * Received packets are handed over in pooled tasks, so dispatching does not allocate once the pools are warm.
+ */
+@Log4j
+public class PacketDispatcher {
+
+    // ======================   VARS
+
+    /**
+     * Used to give every dispatcher unique thread names.
+     */
+    private static final AtomicInteger DISPATCHER_COUNT = new AtomicInteger();
+
+    /**
+     * The maximum amount of idle packet tasks kept per lane.
+     */
+    private static final int POOLED_TASKS = 256;
+
+    /**
+     * The single threaded lanes.
+     */
+    @Getter
+    private final ThreadPoolExecutor[] lanes;
+
+    /**
+     * Idle packet tasks of every lane. Filled by the lane once a task ran.
+     */
+    private final ArrayBlockingQueue<PacketTask>[] taskPools;
+
+    /**
+     * Keeps tasks of the same priority in order.
+     */
+    private final AtomicLong sequence;
+
+    /**
+     * Whether waiting tasks are ordered by their priority instead of their dispatch order.
+     */
+    @Getter
+    private final boolean prioritized;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates & starts a new dispatcher.
+     *
+     * @param laneCount
+     *          The amount of lanes (threads)
+     * @param prioritized
+     *          Whether waiting tasks are ordered by their priority | {@code false} to keep the dispatch order
+     */
+    @SuppressWarnings("unchecked")
+    public PacketDispatcher(int laneCount, boolean prioritized) {
+        this.lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        this.taskPools = (ArrayBlockingQueue<PacketTask>[]) new ArrayBlockingQueue<?>[lanes.length];
+        this.prioritized = prioritized;
+        int dispatcherId = DISPATCHER_COUNT.getAndIncrement();
+
+        for (int i = 0; i < lanes.length; i++) {
+            BlockingQueue<Runnable> queue = prioritized ? new PriorityBlockingQueue<>() : new LinkedBlockingQueue<>();
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue,
+                    new DaemonThreadFactory("JNet-Dispatcher-" + dispatcherId + "-Lane-" + i + "-"));
+            taskPools[i] = new ArrayBlockingQueue<>(POOLED_TASKS);
+        }
+        this.sequence = new AtomicLong();
+    }
+
+    /**
+     * Wrapper around {@link #PacketDispatcher(int, boolean)} keeping the dispatch order.
+     *
+     * @param laneCount
+     *          The amount of lanes (threads)
+     */
+    public PacketDispatcher(int laneCount) {
+        this(laneCount, false);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Runs a task on the lane of a connection.
+     *
+     * @param connection
+     *          The connection the task belongs to
+     * @param priority
+     *          The priority of the task
+     * @param task
+     *          The task
+     */
+    public void dispatch(Connection connection, PacketPriority priority, Runnable task) {
+        lanes[laneOf(connection)].execute(new RunnableTask(priority, sequence.getAndIncrement(), task));
+    }
+
+    /**
+     * Handles a received packet on the lane of its connection, using the priority of the packet.
+     *
+     * @param connection
+     *          The connection the packet was received from
+     * @param packet
+     *          The received packet
+     * @param typeId
+     *          The type id from the header of the packet | {@link PacketRegistry#UNREGISTERED} if unknown
+     */
+    public void dispatch(Connection connection, AbstractPacket packet, int typeId) {
+        int lane = laneOf(connection);
+        PacketTask task = taskPools[lane].poll();
+
+        if (task == null)
+            task = new PacketTask(taskPools[lane]);
+
+        task.prepare(packet.getPriority(), sequence.getAndIncrement(), connection, packet, typeId);
+        lanes[lane].execute(task);
+    }
+
+    /**
+     * Wrapper around {@link #dispatch(Connection, AbstractPacket, int)} for packets with an unknown type id.
+     *
+     * @param connection
+     *          The connection the packet was received from
+     * @param packet
+     *          The received packet
+     */
+    public void dispatch(Connection connection, AbstractPacket packet) {
+        dispatch(connection, packet, PacketRegistry.UNREGISTERED);
+    }
+
+    /**
+     * Runs a task with {@link PacketPriority#INTERACTIVE} on the lane of a connection.
+     *
+     * @param connection
+     *          The connection the task belongs to
+     * @param task
+     *          The task
+     */
+    public void dispatch(Connection connection, Runnable task) {
+        dispatch(connection, PacketPriority.INTERACTIVE, task);
+    }
+
+    /**
+     * Returns the lane index of a connection.
+     *
+     * @param connection
+     *          The connection
+     * @return
+     *          The lane index
+     */
+    public int laneOf(Connection connection) {
+        int hash = System.identityHashCode(connection);
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /**
+     * Lets all lanes finish their queued tasks & stops them afterwards.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes)
+            lane.shutdown();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Returns the amount of tasks waiting in all lanes.
+     *
+     * @return
+     *          The queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes)
+            depth += lane.getQueue().size();
+        return depth;
+    }
+
+    /**
+     * A task waiting in a lane. Ordered by priority first & by dispatch order second inside prioritized lanes.
+     */
+    private static abstract class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+        protected PacketPriority priority;
+        protected long sequence;
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+    /**
+     * Runs an arbitrary task.
+     */
+    private static final class RunnableTask extends PrioritizedTask {
+
+        private final Runnable task;
+
+        RunnableTask(PacketPriority priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+    }
+
+    /**
+     * Handles a received packet. Returns itself to the pool of its lane before the handlers run, so it may be
+     * reused while they are still running.
+     */
+    private static final class PacketTask extends PrioritizedTask {
+
+        private final ArrayBlockingQueue<PacketTask> pool;
+        private Connection connection;
+        private AbstractPacket packet;
+        private int typeId;
+
+        PacketTask(ArrayBlockingQueue<PacketTask> pool) {
+            this.pool = pool;
+        }
+
+        void prepare(PacketPriority priority, long sequence, Connection connection, AbstractPacket packet, int typeId) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.connection = connection;
+            this.packet = packet;
+            this.typeId = typeId;
+        }
+
+        @Override
+        public void run() {
+            Connection connection = this.connection;
+            AbstractPacket packet = this.packet;
+            this.connection = null;
+            this.packet = null;
+            int typeId = this.typeId;
+            pool.offer(this);
+
+            connection.getPacketManager().handlePacket(packet, connection, typeId);
+        }
+
+    }
+
+}
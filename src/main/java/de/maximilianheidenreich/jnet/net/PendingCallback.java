@@ -0,0 +1,151 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.exceptions.PacketTimeoutException;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.utils.HashedWheelTimer;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A callback waiting for the response to a sent packet.
+ * It is scheduled on the callback timer of its packet manager & fails with a {@link PacketTimeoutException} once the
+ * timeout of the packet passed.
+ */
+@Getter
+public class PendingCallback extends HashedWheelTimer.Timeout {
+
+    // ======================   VARS
+
+    /**
+     * The packet manager storing the callback.
+     */
+    private final AbstractPacketManager packetManager;
+
+    /**
+     * The connection the packet was sent on | {@code null} if unknown.
+     */
+    private final Connection connection;
+
+    /**
+     * The sent packet.
+     */
+    private final AbstractPacket packet;
+
+    /**
+     * The future completed with the response.
+     */
+    private final CompletableFuture<AbstractPacket> future;
+
+    /**
+     * The sequence id the callback is stored under inside its connection | 0 = stored by UUID inside the packet manager.
+     */
+    private final long sequenceId;
+
+    /**
+     * Whether the request occupies a slot in the in-flight window of its connection. Guarded by the window of the
+     * connection.
+     */
+    @Getter(AccessLevel.NONE)
+    boolean inFlight;
+
+
+    // ======================   CONSTRUCTOR
+
+    public PendingCallback(AbstractPacketManager packetManager, Connection connection, AbstractPacket packet,
+                           CompletableFuture<AbstractPacket> future, long sequenceId) {
+        this.packetManager = packetManager;
+        this.connection = connection;
+        this.packet = packet;
+        this.future = future;
+        this.sequenceId = sequenceId;
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Removes the callback from the map it is stored in.
+     *
+     * @return
+     *          {@code true} if removed | {@code false} if it was already removed by someone else
+     */
+    public boolean detach() {
+        if (getSequenceId() != 0)
+            return getConnection().removePendingCallback(getSequenceId(), this);
+        return getPacketManager().detachCallback(this);
+    }
+
+    /**
+     * Completes the callback with a response. The callback has to be detached already.
+     *
+     * @param response
+     *          The response
+     */
+    public void complete(AbstractPacket response) {
+        cancel();
+        release();
+        getFuture().complete(response);
+    }
+
+    /**
+     * Excepts the callback. The callback has to be detached already.
+     *
+     * @param throwable
+     *          The reason
+     */
+    public void except(Throwable throwable) {
+        cancel();
+        release();
+        getFuture().completeExceptionally(throwable);
+    }
+
+    /**
+     * Stops waiting for the response without completing the future, so the request can be sent again. The callback
+     * has to be detached already.
+     */
+    public void abandon() {
+        cancel();
+        release();
+    }
+
+    /**
+     * Detaches & excepts the callback if it is still pending.
+     *
+     * @param throwable
+     *          The reason
+     * @return
+     *          {@code true} if the callback was excepted | {@code false} if it was already completed
+     */
+    public boolean fail(Throwable throwable) {
+
+        // RET: Already completed!
+        if (!detach()) return false;
+
+        except(throwable);
+        return true;
+    }
+
+    @Override
+    protected void expire() {
+
+        // RET: Already completed!
+        if (!detach()) return;
+
+        release();
+        getFuture().completeExceptionally(new PacketTimeoutException(getPacket()));
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Frees the slot of the request in the in-flight window of its connection, so the next queued request can be sent.
+     */
+    void release() {
+        if (getConnection() != null)
+            getConnection().releaseRequest(this);
+    }
+
+}
@@ -0,0 +1,222 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A blocking {@link Connection} which occupies one thread while reading from its socket.
+ */
+@Log4j
+@Getter
+public class SocketConnection extends Connection implements Runnable {
+
+    // ======================   VARS
+
+    /**
+     * Wrapper around the sockets {@link java.io.OutputStream}.
+     */
+    private final DataOutputStream outputStream;
+
+    /**
+     * Channel view of the output stream used to write files.
+     * Note: Files are copied through the heap here. Only {@link TransportType#NIO} sends them zero-copy, since a
+     * plain {@link Socket} has no channel to transfer to.
+     */
+    private final WritableByteChannel outputChannel;
+
+    /**
+     * Wrapper around the sockets {@link java.io.InputStream}.
+     */
+    private final DataInputStream inputStream;
+
+    /**
+     * Reused buffer for incoming frames. Only touched by the connection thread.
+     */
+    private byte[] readBuffer;
+
+    /**
+     * Whether a thread is currently draining the outbound queue.
+     */
+    private final AtomicBoolean writing;
+
+
+    // ======================   CONSTRUCTOR
+
+    public SocketConnection(AbstractPacketManager packetManager, Socket socket, String name) throws IOException {
+        super(packetManager, socket, name);
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(getSocket().getOutputStream(), 65536));
+        this.outputChannel = Channels.newChannel(outputStream);
+        this.inputStream = new DataInputStream(new BufferedInputStream(getSocket().getInputStream()));
+        this.readBuffer = new byte[8192];
+        this.writing = new AtomicBoolean(false);
+    }
+
+    public SocketConnection(AbstractPacketManager packetManager, Socket socket) throws IOException {
+        this(packetManager, socket, UUID.randomUUID().toString());
+    }
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public void run() {
+        log.debug(String.format("[JNet] Started new ConnectionThread for %s", getSocket().getRemoteSocketAddress().toString()));
+
+        // Pooled threads get their original name back once the connection is closed
+        String threadName = Thread.currentThread().getName();
+        Thread.currentThread().setName(
+                String.format(
+                        "ConnectionThread for %s |%s",
+                        getSocket().getRemoteSocketAddress().toString(),
+                        threadName
+                )
+        );
+
+        try {
+            while (!isClosed() && !Thread.currentThread().isInterrupted() && getPacketManager().getEventLoop().isRunning()) {
+                int header = recv();
+                handleFrame(readBuffer, 0, header & FRAME_LENGTH, header & ~FRAME_LENGTH);
+            }
+        }
+        catch (EOFException e) {
+            log.debug("[JNet] SOCK (" + getName() + ") Reached end of stream");
+        }
+        catch (IOException e) {
+
+            // Reading fails with a SocketException once the connection was closed locally
+            if (!isClosed()) {
+                log.error("[JNet] SOCK (" + getName() + ") Failed to read frame in " + Thread.currentThread() + "!");
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+        }
+        finally {
+            try { close(); }
+            catch (IOException e) {
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+            Thread.currentThread().setName(threadName);
+        }
+    }
+
+    /**
+     * Reads the next frame into the read buffer.
+     * Note: A broken stream cannot be resynchronized, so every exception ends the connection.
+     *
+     * @return The length prefix of the frame including its flags
+     * @throws IOException
+     */
+    private int recv() throws IOException {
+        int header = getInputStream().readInt();
+        int length = header & FRAME_LENGTH;
+        checkFrameLength(header);
+
+        if (length > readBuffer.length)
+            readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+
+        getInputStream().readFully(readBuffer, 0, length);
+        return header;
+    }
+
+
+    // ======================   SENDING PACKETS
+
+    /**
+     * The thread that wins the race for {@link #writing} drains the queue on behalf of all other senders.
+     *
+     * @throws IOException
+     */
+    @Override
+    protected void scheduleWrite() throws IOException {
+        while (writing.compareAndSet(false, true)) {
+            try {
+                drain();
+            }
+            catch (IOException e) {
+
+                // A partially written frame cannot be resynchronized, so the connection is unusable
+                if (!isClosed()) {
+                    log.debug("[JNet] SOCK (" + getName() + ") Closing after write failure: " + e.getMessage());
+                    try { close(); }
+                    catch (IOException closeError) {
+                        log.error(ExceptionUtils.getStackTraceAsString(closeError));
+                    }
+                }
+                throw e;
+            }
+            finally {
+                writing.set(false);
+            }
+
+            // RET: No frames were queued while releasing the writer!
+            if (!hasPendingFrames())
+                return;
+        }
+    }
+
+    /**
+     * Writing blocks once the socket buffer of a dead peer is full, so control frames are drained by the request
+     * executor of the packet manager instead of the calling thread.
+     */
+    @Override
+    protected void scheduleControlWrite() {
+
+        // RET: The active writer picks the frame up before releasing!
+        if (writing.get()) return;
+
+        try {
+            getPacketManager().getRequestExecutor().execute(() -> {
+                try { scheduleWrite(); }
+                catch (IOException e) {
+                    log.debug("[JNet] SOCK (" + getName() + ") Could not write control frame: " + e.getMessage());
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            log.debug("[JNet] SOCK (" + getName() + ") Dropping control frame, the packet manager was shut down");
+        }
+    }
+
+    /**
+     * Writes all queued frames into the buffered stream and flushes once the queue is empty or the
+     * flush latency budget expired.
+     *
+     * @throws IOException
+     */
+    private void drain() throws IOException {
+        long budget = getPacketManager().getFlushLatencyNanos();
+        long unflushedSince = 0;
+
+        byte[] frame;
+        while ((frame = pollFrame()) != null) {
+            getOutputStream().write(frame);
+            frameWritten(frame);
+
+            // The data of a file chunk directly follows its header
+            if (hasFileRegion() && !writeFileRegion(getOutputChannel()))
+                throw new IOException("Could not write file chunk");
+
+            if (unflushedSince == 0)
+                unflushedSince = System.nanoTime();
+            else if (System.nanoTime() - unflushedSince >= budget) {
+                getOutputStream().flush();
+                unflushedSince = 0;
+            }
+        }
+
+        getOutputStream().flush();
+    }
+
+}
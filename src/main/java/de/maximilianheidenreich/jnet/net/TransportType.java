@@ -0,0 +1,18 @@
+package de.maximilianheidenreich.jnet.net;
+
+/**
+ * The transport implementation that is used for new {@link Connection}s.
+ */
+public enum TransportType {
+
+    /**
+     * Every {@link Connection} blocks one thread of the connection executor while reading.
+     */
+    BLOCKING,
+
+    /**
+     * All {@link Connection}s are served by a small fixed set of selector threads using non-blocking channels.
+     */
+    NIO
+
+}
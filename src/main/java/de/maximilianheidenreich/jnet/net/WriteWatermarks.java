@@ -0,0 +1,89 @@
+package de.maximilianheidenreich.jnet.net;
+
+import lombok.Getter;
+
+/**
+ * Limits for the amount of queued but not yet written data of a {@link Connection}.
+ * A connection becomes unwritable once the bytes or packets exceed the high watermark & writable again once both
+ * dropped to the low watermark.
+ */
+@Getter
+public class WriteWatermarks {
+
+    // ======================   VARS
+
+    /**
+     * The default watermarks: 512 KiB / 1 MiB & 4096 / 8192 packets.
+     */
+    public static final WriteWatermarks DEFAULT = new WriteWatermarks(512 * 1024, 1024 * 1024, 4096, 8192);
+
+    /**
+     * The amount of queued bytes at which a connection becomes writable again.
+     */
+    private final long lowBytes;
+
+    /**
+     * The amount of queued bytes above which a connection becomes unwritable.
+     */
+    private final long highBytes;
+
+    /**
+     * The amount of queued packets at which a connection becomes writable again.
+     */
+    private final int lowPackets;
+
+    /**
+     * The amount of queued packets above which a connection becomes unwritable.
+     */
+    private final int highPackets;
+
+
+    // ======================   CONSTRUCTOR
+
+    public WriteWatermarks(long lowBytes, long highBytes, int lowPackets, int highPackets) {
+        if (lowBytes < 0 || lowBytes > highBytes || lowPackets < 0 || lowPackets > highPackets)
+            throw new IllegalArgumentException("Low watermarks must be positive and not greater than high watermarks");
+
+        this.lowBytes = lowBytes;
+        this.highBytes = highBytes;
+        this.lowPackets = lowPackets;
+        this.highPackets = highPackets;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Checks whether the high watermark is exceeded.
+     *
+     * @param bytes
+     *          The queued bytes
+     * @param packets
+     *          The queued packets
+     * @return
+     *          {@code true} if exceeded | {@code false} if not
+     */
+    public boolean isAboveHigh(long bytes, int packets) {
+        return bytes > highBytes || packets > highPackets;
+    }
+
+    /**
+     * Checks whether both values dropped to the low watermark.
+     *
+     * @param bytes
+     *          The queued bytes
+     * @param packets
+     *          The queued packets
+     * @return
+     *          {@code true} if at or below | {@code false} if not
+     */
+    public boolean isAtOrBelowLow(long bytes, int packets) {
+        return bytes <= lowBytes && packets <= lowPackets;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteWatermarks(bytes %d/%d, packets %d/%d)", lowBytes, highBytes, lowPackets, highPackets);
+    }
+
+}
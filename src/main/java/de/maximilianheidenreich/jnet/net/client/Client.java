@@ -1,19 +1,46 @@
 package de.maximilianheidenreich.jnet.net.client;
 
+import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import de.maximilianheidenreich.jnet.exceptions.ConnectionClosedException;
+import de.maximilianheidenreich.jnet.exceptions.PacketTimeoutException;
 import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
 import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.TransportType;
 import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.FilePacket;
+import de.maximilianheidenreich.jnet.packets.PacketPriority;
 import de.maximilianheidenreich.jnet.packets.core.NameChangePacket;
+import de.maximilianheidenreich.jnet.utils.DaemonThreadFactory;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
+import lombok.Synchronized;
 import lombok.extern.log4j.Log4j;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A client that cann connect and communicate with a server.
+ * It can open a pool of connections to the same server & spread its packets across them (see {@link #setPoolSize(int)})
+ * and reopen connections which were closed by the server or the network (see {@link #enableReconnect}).
  */
 @Log4j
 @Getter
@@ -32,62 +59,571 @@ public class Client extends AbstractPacketManager {
     private int port;
 
     /**
-     * The connection to a server once established.
+     * The first connection to a server once established.
      */
     private Connection connection;
 
+    /**
+     * All connections to the server | empty if not connected.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Connection[] pool;
+
+    /**
+     * The amount of connections opened by {@link #connect(String, int)}.
+     * Note: Changing this has no effect until the next connect.
+     */
+    @Setter
+    private int poolSize;
+
+    /**
+     * How the connection for the next packet is picked if multiple connections are open.
+     */
+    @Setter
+    private LoadBalancing loadBalancing;
+
+    /**
+     * Used to pick connections in turn.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger nextIndex;
+
+    /**
+     * Whether connect was called without a disconnect afterwards. Closed connections are only reopened while set.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile boolean connected;
+
+    /**
+     * The delay before the first reconnect attempt in nanoseconds | 0 = reconnecting disabled.
+     */
+    private volatile long reconnectDelayNanos;
+
+    /**
+     * The upper bound of the exponentially growing delay between reconnect attempts in nanoseconds.
+     */
+    private volatile long maxReconnectDelayNanos;
+
+    /**
+     * The ExecutorService running reconnect attempts & replays. Opening a connection blocks, so it must not run on
+     * the scheduler which also drives heartbeats & idle checks.
+     */
+    @Setter
+    private ExecutorService reconnectExecutor;
+
+    /**
+     * The time in milliseconds opening a connection may take before it fails | 0 = wait as long as the OS does.
+     */
+    private volatile int connectTimeoutMillis;
+
+    /**
+     * The maximum amount of requests which are kept while reconnecting & sent again afterwards | 0 = pending
+     * requests fail once their connection was closed.
+     * Note: A request may be handled twice if the server handled it but the connection closed before the response
+     * arrived, so only idempotent requests should be sent while replaying is enabled.
+     */
+    @Setter
+    private int replayBufferSize;
+
+    /**
+     * Requests waiting for an open connection. Guarded by itself.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Queue<Replay> replayBuffer;
+
+    /**
+     * The name set using {@link #setName(String)} or {@link #setNameRemote(String)} | {@code null} if none.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile String name;
+
+    /**
+     * Whether {@link #name} was announced to the server & has to be announced again after reconnecting.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile boolean nameAnnounced;
+
 
     // ======================   CONSTRUCTOR
 
-    public Client() {}
+    public Client() {
+        this.pool = new Connection[0];
+        this.poolSize = 1;
+        this.loadBalancing = LoadBalancing.ROUND_ROBIN;
+        this.nextIndex = new AtomicInteger();
+        this.connected = false;
+        this.reconnectDelayNanos = 0;
+        this.maxReconnectDelayNanos = 0;
+        this.reconnectExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("JNet-Reconnect-"));
+        this.connectTimeoutMillis = 10_000;
+        this.replayBufferSize = 0;
+        this.replayBuffer = new ArrayDeque<>();
+    }
 
 
     // ======================   BUSINESS LOGIC
 
     /**
-     * Connect to a server.
+     * Connect to a server using {@link #getPoolSize()} connections. Existing connections are closed first.
      *
      * @param host
      *          The remote host
      * @param port
      *          The remote port
      * @throws IOException
+     *          If the connection failed or the client was already shut down
      */
+    @Synchronized
     public void connect(String host, int port) throws IOException {
-        this.connection = new Connection(this, new Socket(host, port));
+
+        // RET: Threads are gone!
+        if (isShutdown())
+            throw new IOException("[JNet] Client was shut down & cannot connect again");
+
+        closeConnections();
+        failReplays();
+
+        Connection[] connections = new Connection[Math.max(1, getPoolSize())];
+        try {
+            for (int i = 0; i < connections.length; i++)
+                connections[i] = openConnection(host, port);
+        }
+        catch (IOException e) {
+            for (Connection opened : connections)
+                if (opened != null) opened.close();
+            throw e;
+        }
+
+        this.connection = connections[0];
+        this.pool = connections;
         this.host = host;
         this.port = port;
-        ForkJoinPool.commonPool().submit(this.connection);
+        this.connected = true;
+    }
+
+    /**
+     * Closes all connections to the server without reconnecting & stops every thread of the client
+     * (see {@link #shutdown()}). Pending callbacks & requests waiting for a reconnect fail with a
+     * {@link ConnectionClosedException}.
+     * Note: The client cannot connect again afterwards.
+     *
+     * @return
+     *          {@code true} if a connection was closed | {@code false} if not connected
+     * @throws IOException
+     */
+    @Synchronized
+    public boolean disconnect() throws IOException {
+        boolean closed = closeConnections();
+        shutdown();
+        return closed;
+    }
+
+    @Override
+    public void shutdown() {
+        this.connected = false;
+        super.shutdown();
+        reconnectExecutor.shutdownNow();
+        failReplays();
+    }
+
+    /**
+     * Reopens connections which were closed without calling {@link #disconnect()}. The delay between attempts
+     * starts at initialDelay & doubles up to maxDelay. Every delay is randomized by up to 50%, so clients do not
+     * reconnect to a restarted server all at once.
+     * Once reconnected, the name set using {@link #setNameRemote(String)} is announced again & requests kept in the
+     * replay buffer (see {@link #setReplayBufferSize(int)}) are sent again.
+     *
+     * @param initialDelay
+     *          The delay before the first attempt
+     * @param maxDelay
+     *          The maximum delay between two attempts
+     * @param unit
+     *          The {@link TimeUnit} of both delays
+     */
+    public void enableReconnect(long initialDelay, long maxDelay, TimeUnit unit) {
+        this.maxReconnectDelayNanos = Math.max(1, unit.toNanos(maxDelay));
+        this.reconnectDelayNanos = Math.max(1, Math.min(unit.toNanos(initialDelay), maxReconnectDelayNanos));
+    }
+
+    /**
+     * Sets how long opening a connection may take before it fails (default: 10 seconds). Applies to
+     * {@link #connect(String, int)} & every reconnect attempt.
+     *
+     * @param timeout
+     *          The timeout | 0 = wait as long as the OS does
+     * @param unit
+     *          The {@link TimeUnit} of timeout
+     */
+    public void setConnectTimeout(long timeout, TimeUnit unit) {
+        this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, Math.max(0, unit.toMillis(timeout)));
+    }
+
+    /**
+     * Stops reopening closed connections. Attempts which are already scheduled are skipped.
+     */
+    public void disableReconnect() {
+        this.reconnectDelayNanos = 0;
+        failReplays();
     }
 
     /**
-     * Wrapper to easily send a packet to the server.
+     * Picks the connection used for the next packet according to the {@link LoadBalancing} of this client.
+     * Closed connections are skipped as long as an open one is left.
+     *
+     * @return
+     *          The connection | {@code null} if not connected
+     */
+    public Connection nextConnection() {
+        Connection[] connections = pool;
+
+        // RET: Not pooled!
+        if (connections.length <= 1)
+            return getConnection();
+
+        int start = Math.floorMod(nextIndex.getAndIncrement(), connections.length);
+
+        // RET: Use the next open connection!
+        if (getLoadBalancing() == LoadBalancing.ROUND_ROBIN) {
+            for (int i = 0; i < connections.length; i++) {
+                Connection candidate = connections[(start + i) % connections.length];
+                if (!candidate.isClosed()) return candidate;
+            }
+            return connections[start];
+        }
+
+        // Scanning from a rotating start spreads requests evenly while all connections are idle
+        Connection best = connections[start];
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < connections.length; i++) {
+            Connection candidate = connections[(start + i) % connections.length];
+            if (candidate.isClosed()) continue;
+
+            int load = candidate.getInFlightRequests() + candidate.getQueuedRequests();
+            if (load < bestLoad) {
+                best = candidate;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Wrapper to easily send a packet to the server using the connection picked by {@link #nextConnection()}.
      *
      * @param packet
      *          The packet to send
      * @return
      *          {@code true} if the packet was sent | {@code false} if not connection with that name was found
+     * @throws IOException
+     *          If the client was never connected
      */
     public boolean sendRaw(AbstractPacket packet) throws IOException {
-        getConnection().sendRaw(packet);
+        requireConnection().sendRaw(packet);
         return true;
     }
 
     /**
-     * Wrapper to easily send a packet to the server.
+     * Wrapper to easily send a packet to the server using the connection picked by {@link #nextConnection()}.
+     * Responses are matched through the callbacks of this client, so pooling is transparent to the caller.
      *
      * @param packet
      *          The packet to send
      * @return
      *          The callback | {@code null} if no connection with that name was found
+     * @throws IOException
+     *          If the client was never connected
      */
     public CompletableFuture<AbstractPacket> send(AbstractPacket packet) throws IOException {
-        return getConnection().send(packet);
+        return requireConnection().send(packet);
+    }
+
+
+    @Override
+    public Collection<Connection> getConnections() {
+        return Collections.unmodifiableList(Arrays.asList(pool));
+    }
+
+    /**
+     * Returns the amount of requests waiting for a reconnect.
+     *
+     * @return
+     *          The amount
+     */
+    public int getReplayBufferDepth() {
+        synchronized (replayBuffer) {
+            return replayBuffer.size();
+        }
+    }
+
+
+    // ======================   RECONNECTING
+
+    @Override
+    protected void onConnectionClosed(Connection closed) {
+
+        // RET: Closed on purpose or not part of the pool (anymore)!
+        if (!connected || reconnectDelayNanos == 0 || !Arrays.asList(pool).contains(closed)) return;
+
+        scheduleReconnect(closed, 0);
+    }
+
+    @Override
+    protected boolean retainRequest(Connection closed, AbstractPacket packet, CompletableFuture<AbstractPacket> future) {
+
+        // RET: Not reconnecting or already expired!
+        if (!connected || reconnectDelayNanos == 0 || packet.isTimeout()) return false;
+
+        // RET: Internal packets are sent again by the client itself if necessary!
+        if (packet.getPriority() == PacketPriority.CONTROL) return false;
+
+        // RET: The content of a file is not kept, so it cannot be sent again!
+        if (packet instanceof FilePacket) return false;
+
+        synchronized (replayBuffer) {
+
+            // RET: Buffer full!
+            if (replayBuffer.size() >= getReplayBufferSize()) return false;
+
+            replayBuffer.add(new Replay(closed, packet, future));
+        }
+
+        // Other connections of the pool may still be open. Sending may block, so it must not happen on the closing thread
+        reconnectExecutor.execute(this::replayRequests);
+        return true;
+    }
+
+    /**
+     * Closes all connections of the pool without reconnecting.
+     *
+     * @return
+     *          {@code true} if a connection was closed | {@code false} if not connected
+     * @throws IOException
+     */
+    private boolean closeConnections() throws IOException {
+        this.connected = false;
+        boolean closed = false;
+
+        for (Connection open : pool) {
+            if (open.isClosed()) continue;
+            open.close();
+            closed = true;
+        }
+        return closed;
+    }
+
+    /**
+     * Schedules the next attempt to reopen a closed connection.
+     *
+     * @param closed
+     *          The closed connection
+     * @param attempt
+     *          The amount of failed attempts so far
+     */
+    private void scheduleReconnect(Connection closed, int attempt) {
+        long delay = reconnectDelayNanos;
+
+        // RET: Disabled in the meantime!
+        if (delay == 0) return;
+
+        for (int i = 0; i < attempt && delay < maxReconnectDelayNanos; i++)
+            delay *= 2;
+        delay = Math.min(delay, maxReconnectDelayNanos);
+        delay -= ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+        try {
+            getScheduler().schedule(
+                    () -> reconnectExecutor.execute(() -> reconnect(closed, attempt)),
+                    delay, TimeUnit.NANOSECONDS
+            );
+        }
+        catch (RejectedExecutionException e) {
+            log.debug(String.format("[JNet] Not reconnecting to %s:%d, the client was shut down", getHost(), getPort()));
+        }
+    }
+
+    /**
+     * Tries to reopen a closed connection & replaces it inside the pool.
+     *
+     * @param closed
+     *          The closed connection
+     * @param attempt
+     *          The amount of failed attempts so far
+     */
+    private void reconnect(Connection closed, int attempt) {
+
+        // RET: Disconnected or disabled in the meantime!
+        if (!connected || reconnectDelayNanos == 0) return;
+
+        Connection reopened;
+        try {
+            reopened = openConnection(getHost(), getPort());
+        }
+        catch (IOException e) {
+            log.debug(String.format("[JNet] Reconnect attempt %d to %s:%d failed: %s", attempt + 1, getHost(), getPort(), e.getMessage()));
+            expireReplays();
+            scheduleReconnect(closed, attempt + 1);
+            return;
+        }
+
+        try {
+
+            // RET: Pool changed in the meantime!
+            if (!replaceConnection(closed, reopened)) {
+                reopened.close();
+                return;
+            }
+
+            if (name != null && nameAnnounced) reopened.setNameRemote(name);
+            else if (name != null) reopened.setName(name);
+        }
+        catch (IOException e) {
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+
+        log.info(String.format("[JNet] Reconnected to %s:%d after %d attempts", getHost(), getPort(), attempt + 1));
+        replayRequests();
+    }
+
+    /**
+     * Replaces a closed connection of the pool.
+     *
+     * @param closed
+     *          The closed connection
+     * @param reopened
+     *          The new connection
+     * @return
+     *          {@code true} if replaced | {@code false} if the closed connection is not part of the pool anymore
+     */
+    @Synchronized
+    private boolean replaceConnection(Connection closed, Connection reopened) {
+        Connection[] connections = pool.clone();
+        int index = Arrays.asList(connections).indexOf(closed);
+
+        // RET: Disconnected or connected again in the meantime!
+        if (!connected || index < 0) return false;
+
+        connections[index] = reopened;
+        if (index == 0) this.connection = reopened;
+        this.pool = connections;
+        return true;
+    }
+
+    /**
+     * Sends the requests of the replay buffer again as long as an open connection is available.
+     */
+    private void replayRequests() {
+        while (true) {
+            Connection target = nextConnection();
+
+            // RET: Still disconnected!
+            if (target == null || target.isClosed()) return;
+
+            Replay replay;
+            synchronized (replayBuffer) {
+                replay = replayBuffer.poll();
+            }
+
+            // RET: Nothing left!
+            if (replay == null) return;
+
+            if (replay.packet.isTimeout()) {
+                replay.future.completeExceptionally(new PacketTimeoutException(replay.packet));
+                continue;
+            }
+
+            try {
+                target.send(replay.packet).whenComplete((response, err) -> {
+                    if (err != null) replay.future.completeExceptionally(err);
+                    else replay.future.complete(response);
+                });
+            }
+            catch (IOException e) {
+                replay.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Fails requests of the replay buffer whose timeout passed while reconnecting.
+     */
+    private void expireReplays() {
+        List<Replay> expired = new ArrayList<>();
+        synchronized (replayBuffer) {
+            Iterator<Replay> iterator = replayBuffer.iterator();
+            while (iterator.hasNext()) {
+                Replay replay = iterator.next();
+                if (!replay.packet.isTimeout()) continue;
+                iterator.remove();
+                expired.add(replay);
+            }
+        }
+
+        for (Replay replay : expired)
+            replay.future.completeExceptionally(new PacketTimeoutException(replay.packet));
+    }
+
+    /**
+     * Fails all requests of the replay buffer because they will never be sent again.
+     */
+    private void failReplays() {
+        List<Replay> failed;
+        synchronized (replayBuffer) {
+            failed = new ArrayList<>(replayBuffer);
+            replayBuffer.clear();
+        }
+
+        for (Replay replay : failed)
+            replay.future.completeExceptionally(new ConnectionClosedException(replay.connection));
     }
 
 
     // ======================   HELPERS
 
+    /**
+     * Picks the connection for the next packet. While reconnecting the closed connection is returned, so packets
+     * sent meanwhile are replayed or fail like the others lost with it.
+     *
+     * @return
+     *          The connection
+     * @throws IOException
+     *          If the client was never connected
+     */
+    private Connection requireConnection() throws IOException {
+        Connection next = nextConnection();
+
+        // RET: Never connected!
+        if (next == null)
+            throw new IOException("[JNet] Client is not connected");
+
+        return next;
+    }
+
+    /**
+     * Opens & starts a new connection to a server.
+     *
+     * @param host
+     *          The remote host
+     * @param port
+     *          The remote port
+     * @return
+     *          The started connection
+     * @throws IOException
+     */
+    private Connection openConnection(String host, int port) throws IOException {
+        Socket socket = getTransportType() == TransportType.NIO
+                ? SocketChannel.open().socket()
+                : new Socket();
+
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return startConnection(socket);
+    }
+
     /**
      * Updates the name locally.
      *
@@ -95,7 +631,10 @@ public class Client extends AbstractPacketManager {
      *      The new name to use
      */
     public void setName(String name) {
-       getConnection().setName(name);
+        this.name = name;
+        this.nameAnnounced = false;
+        for (Connection pooled : pool)
+            pooled.setName(name);
     }
 
     /**
@@ -106,8 +645,28 @@ public class Client extends AbstractPacketManager {
      * @throws IOException
      */
     public void setNameRemote(String name) throws IOException {
-        getConnection().setNameRemote(name);
+        this.name = name;
+        this.nameAnnounced = true;
+        for (Connection pooled : pool)
+            pooled.setNameRemote(name);
     }
 
 
+    /**
+     * A request waiting for a reconnect.
+     */
+    private static final class Replay {
+
+        private final Connection connection;
+        private final AbstractPacket packet;
+        private final CompletableFuture<AbstractPacket> future;
+
+        Replay(Connection connection, AbstractPacket packet, CompletableFuture<AbstractPacket> future) {
+            this.connection = connection;
+            this.packet = packet;
+            this.future = future;
+        }
+
+    }
+
 }
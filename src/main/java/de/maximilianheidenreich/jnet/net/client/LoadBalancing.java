@@ -0,0 +1,19 @@
+package de.maximilianheidenreich.jnet.net.client;
+
+/**
+ * Defines how a pooled {@link Client} picks the connection for the next packet.
+ */
+public enum LoadBalancing {
+
+    /**
+     * The connections are used in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The connection with the fewest unanswered (in-flight & queued) requests is used. Slow streams get less
+     * new requests, so one stalled connection does not delay the others.
+     */
+    LEAST_IN_FLIGHT
+
+}
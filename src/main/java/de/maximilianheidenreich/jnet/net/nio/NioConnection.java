@@ -0,0 +1,295 @@
+package de.maximilianheidenreich.jnet.net.nio;
+
+import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
+import de.maximilianheidenreich.jnet.net.Connection;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A non-blocking {@link Connection} that is served by a {@link NioSelectorThread}.
+ */
+@Log4j
+@Getter
+public class NioConnection extends Connection {
+
+    // ======================   VARS
+
+    /**
+     * The underlying non-blocking channel.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The selector thread serving this connection.
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private NioSelectorThread selectorThread;
+
+    /**
+     * The key of the channel once registered.
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private SelectionKey key;
+
+    /**
+     * Buffer used to accumulate partially read frames. Only touched by the selector thread.
+     */
+    private ByteBuffer readBuffer;
+
+    /**
+     * Frames taken from the outbound queue which are written using a single gathering write.
+     * Only touched by the selector thread.
+     */
+    private final ByteBuffer[] writeBatch;
+
+    /**
+     * The range of {@link #writeBatch} that still has to be written.
+     */
+    private int batchStart, batchEnd;
+
+    /**
+     * Whether a write was already requested from the selector thread.
+     */
+    private final AtomicBoolean writeRequested;
+
+    /**
+     * Whether reading is paused until the consumer of a received file caught up. Only touched by the selector
+     * thread.
+     */
+    private boolean readingPaused;
+
+
+    // ======================   CONSTRUCTOR
+
+    public NioConnection(AbstractPacketManager packetManager, SocketChannel channel, String name) throws IOException {
+        super(packetManager, channel.socket(), name);
+        this.channel = channel;
+        this.readBuffer = ByteBuffer.allocate(8192);
+        this.writeBatch = new ByteBuffer[64];
+        this.writeRequested = new AtomicBoolean(false);
+        this.readingPaused = false;
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    public NioConnection(AbstractPacketManager packetManager, SocketChannel channel) throws IOException {
+        this(packetManager, channel, UUID.randomUUID().toString());
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Reads all available bytes and handles every completed frame.
+     * Note: Must only be called by the selector thread.
+     *
+     * @throws IOException
+     */
+    void handleRead() throws IOException {
+
+        // RET: Selected before reading was paused!
+        if (readingPaused) return;
+
+        if (getChannel().read(readBuffer) == -1) {
+            log.debug("[JNet] SOCK (" + getName() + ") Reached end of stream");
+            closeQuietly();
+            return;
+        }
+
+        handleFrames();
+    }
+
+    /**
+     * Handles every completed frame inside the read buffer until reading gets paused.
+     * Note: Must only be called by the selector thread.
+     *
+     * @throws IOException
+     */
+    private void handleFrames() throws IOException {
+        readBuffer.flip();
+        int needed = 0;
+
+        while (!readingPaused && readBuffer.remaining() >= 4) {
+            int header = readBuffer.getInt(readBuffer.position());
+            int length = header & FRAME_LENGTH;
+            checkFrameLength(header);
+
+            // RET: Frame not complete yet!
+            if (readBuffer.remaining() < 4 + length) {
+                needed = 4 + length;
+                break;
+            }
+
+            int start = readBuffer.position() + 4;
+            readBuffer.position(start + length);
+
+            handleFrame(readBuffer.array(), readBuffer.arrayOffset() + start, length, header & ~FRAME_LENGTH);
+        }
+
+        readBuffer.compact();
+
+        // Grow the buffer if the next frame does not fit
+        if (needed > readBuffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, readBuffer.capacity() * 2));
+            readBuffer.flip();
+            grown.put(readBuffer);
+            readBuffer = grown;
+        }
+    }
+
+    /**
+     * Writes as many queued frames as the socket accepts. Multiple small frames are coalesced into a
+     * single gathering write.
+     * Note: Must only be called by the selector thread.
+     *
+     * @throws IOException
+     */
+    void handleWrite() throws IOException {
+        writeRequested.set(false);
+
+        while (true) {
+
+            // RET: Socket buffer full while writing the data of a file chunk, wait for next OP_WRITE!
+            if (batchStart == batchEnd && hasFileRegion() && !writeFileRegion(getChannel())) {
+                updateInterest(true);
+                return;
+            }
+
+            // Refill the batch once it was written completely
+            if (batchStart == batchEnd) {
+                batchStart = batchEnd = 0;
+
+                // A chunk ends the batch, so frames queued meanwhile are written before the next chunk & the data
+                // of file chunks is written right after their header
+                byte[] frame;
+                while (batchEnd < writeBatch.length && (frame = pollFrame()) != null) {
+                    writeBatch[batchEnd++] = ByteBuffer.wrap(frame);
+                    if (isChunk(frame)) break;
+                }
+            }
+
+            // RET: Nothing left to write!
+            if (batchStart == batchEnd) {
+                updateInterest(false);
+                return;
+            }
+
+            getChannel().write(writeBatch, batchStart, batchEnd - batchStart);
+            while (batchStart < batchEnd && !writeBatch[batchStart].hasRemaining()) {
+                frameWritten(writeBatch[batchStart].array());
+                writeBatch[batchStart++] = null;
+            }
+
+            // RET: Socket buffer full, wait for next OP_WRITE!
+            if (batchStart < batchEnd) {
+                updateInterest(true);
+                return;
+            }
+        }
+    }
+
+
+    // ======================   SENDING PACKETS
+
+    /**
+     * The selector thread is the only writer. It writes queued frames as soon as the socket is writable.
+     */
+    @Override
+    protected void scheduleWrite() {
+        if (writeRequested.compareAndSet(false, true))
+            getSelectorThread().execute(this::enableWriteInterest);
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * The consumer of a received file is waited for on the file receiver executor, so the selector thread keeps
+     * serving all other connections. Frames left inside the read buffer are handled once reading resumes.
+     */
+    @Override
+    protected void pauseReading(Runnable task) {
+        this.readingPaused = true;
+        updateInterest((getKey().interestOps() & SelectionKey.OP_WRITE) != 0);
+
+        try {
+            getPacketManager().getFileReceiverExecutor().execute(() -> {
+                try { task.run(); }
+                finally {
+                    getSelectorThread().execute(this::resumeReading);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            log.debug("[JNet] SOCK (" + getName() + ") Closing, the packet manager was shut down");
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Handles the frames left inside the read buffer & reads from the channel again.
+     */
+    private void resumeReading() {
+        this.readingPaused = false;
+
+        // RET: Closed in the meantime!
+        if (getKey() == null || !getKey().isValid()) return;
+
+        try {
+            handleFrames();
+            updateInterest((getKey().interestOps() & SelectionKey.OP_WRITE) != 0);
+        }
+        catch (IOException | CancelledKeyException e) {
+            log.debug("[JNet] SOCK (" + getName() + ") Closing after I/O failure: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Makes the selector thread wait for the channel to become writable.
+     */
+    private void enableWriteInterest() {
+        if (getKey() != null && getKey().isValid())
+            updateInterest(true);
+    }
+
+    /**
+     * Sets the operations the selector thread waits for. Reading is left out while it is paused.
+     *
+     * @param write
+     *          Whether the selector thread should wait for the channel to become writable
+     */
+    private void updateInterest(boolean write) {
+        getKey().interestOps((readingPaused ? 0 : SelectionKey.OP_READ) | (write ? SelectionKey.OP_WRITE : 0));
+    }
+
+    @Override
+    protected void closeTransport() throws IOException {
+        if (getKey() != null) getKey().cancel();
+        getChannel().close();
+    }
+
+    /**
+     * Closes the connection and logs possible exceptions.
+     */
+    void closeQuietly() {
+        try { close(); }
+        catch (IOException e) {
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+    }
+
+}
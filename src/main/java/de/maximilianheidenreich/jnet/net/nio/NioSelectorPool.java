@@ -0,0 +1,73 @@
+package de.maximilianheidenreich.jnet.net.nio;
+
+import de.maximilianheidenreich.jnet.utils.DaemonThreadFactory;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link NioSelectorThread}s which share all {@link NioConnection}s of a packet manager.
+ */
+public class NioSelectorPool {
+
+    // ======================   VARS
+
+    /**
+     * The selector threads.
+     */
+    @Getter
+    private final NioSelectorThread[] selectorThreads;
+
+    /**
+     * Used to assign connections to threads in a round-robin fashion.
+     */
+    private final AtomicInteger next;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates & starts a new pool.
+     *
+     * @param threads
+     *          The amount of selector threads
+     * @throws IOException
+     */
+    public NioSelectorPool(int threads) throws IOException {
+        this.selectorThreads = new NioSelectorThread[Math.max(1, threads)];
+        this.next = new AtomicInteger();
+        ThreadFactory threadFactory = new DaemonThreadFactory("JNet-NioSelector-");
+
+        for (int i = 0; i < selectorThreads.length; i++) {
+            selectorThreads[i] = new NioSelectorThread();
+            threadFactory.newThread(selectorThreads[i]).start();
+        }
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Assigns a connection to one of the selector threads and starts reading from it.
+     *
+     * @param connection
+     *          The connection to register
+     */
+    public void register(NioConnection connection) {
+        NioSelectorThread thread = selectorThreads[Math.floorMod(next.getAndIncrement(), selectorThreads.length)];
+        connection.setSelectorThread(thread);
+        thread.register(connection);
+    }
+
+    /**
+     * Stops all selector threads. Their selectors are closed once they stopped selecting.
+     * Note: Connections registered with the pool should be closed before, the pool cannot be used afterwards.
+     */
+    public void shutdown() {
+        for (NioSelectorThread thread : selectorThreads)
+            thread.shutdown();
+    }
+
+}
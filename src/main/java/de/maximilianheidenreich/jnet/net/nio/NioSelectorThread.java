@@ -0,0 +1,156 @@
+package de.maximilianheidenreich.jnet.net.nio;
+
+import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread owning a single {@link Selector} which serves reads & writes of all {@link NioConnection}s registered to it.
+ */
+@Log4j
+public class NioSelectorThread implements Runnable {
+
+    // ======================   VARS
+
+    /**
+     * The selector all connections of this thread are registered with.
+     */
+    @Getter
+    private final Selector selector;
+
+    /**
+     * Tasks which have to be executed on the selector thread (registrations, interest changes).
+     */
+    private final Queue<Runnable> tasks;
+
+    /**
+     * Whether the thread should keep selecting.
+     */
+    private volatile boolean running;
+
+
+    // ======================   CONSTRUCTOR
+
+    public NioSelectorThread() throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.running = true;
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public void run() {
+        log.debug(String.format("[JNet] Started new %s", Thread.currentThread().getName()));
+
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                getSelector().select();
+                runTasks();
+
+                Iterator<SelectionKey> keys = getSelector().selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    process(key);
+                }
+            }
+            catch (IOException e) {
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+        }
+
+        try { getSelector().close(); }
+        catch (IOException e) {
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+    }
+
+    /**
+     * Handles a single selected key.
+     *
+     * @param key
+     *          The selected key
+     */
+    private void process(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+
+        try {
+            if (key.isReadable()) connection.handleRead();
+            if (key.isValid() && key.isWritable()) connection.handleWrite();
+        }
+        catch (IOException | CancelledKeyException e) {
+            log.debug("[JNet] SOCK (" + connection.getName() + ") Closing after I/O failure: " + e.getMessage());
+            connection.closeQuietly();
+        }
+    }
+
+    /**
+     * Runs all pending tasks.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try { task.run(); }
+            catch (Exception e) {
+                log.error(ExceptionUtils.getStackTraceAsString(e));
+            }
+        }
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Executes a task on the selector thread.
+     *
+     * @param task
+     *          The task to execute
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        getSelector().wakeup();
+    }
+
+    /**
+     * Registers a connection with this thread. Reading starts immediately afterwards.
+     *
+     * @param connection
+     *          The connection to register
+     */
+    public void register(NioConnection connection) {
+        execute(() -> {
+
+            // RET: Closed before it was registered!
+            if (connection.isClosed()) return;
+
+            try {
+                connection.setKey(connection.getChannel().register(getSelector(), SelectionKey.OP_READ, connection));
+            }
+            catch (IOException e) {
+
+                // Closed concurrently while registering
+                if (!connection.isClosed()) log.error(ExceptionUtils.getStackTraceAsString(e));
+                connection.closeQuietly();
+            }
+        });
+    }
+
+    /**
+     * Tells the thread to stop selecting.
+     */
+    public void shutdown() {
+        this.running = false;
+        getSelector().wakeup();
+    }
+
+}
@@ -1,9 +1,15 @@
 package de.maximilianheidenreich.jnet.net.server;
 
+import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
 import de.maximilianheidenreich.jnet.net.AbstractPacketManager;
+import de.maximilianheidenreich.jnet.net.BackpressureMode;
 import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.EncodedPacket;
+import de.maximilianheidenreich.jnet.net.TransportType;
 import de.maximilianheidenreich.jnet.packets.AbstractPacket;
 import de.maximilianheidenreich.jnet.packets.core.NameChangePacket;
+import de.maximilianheidenreich.jnet.utils.DaemonThreadFactory;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j;
@@ -13,11 +19,20 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 /**
  * A server which can accept multiple concurrent connections.
@@ -49,10 +64,26 @@ public class Server extends AbstractPacketManager {
     private ServerSocket serverSocket;
 
     /**
-     * Store active connections with clients.
+     * Store active connections with clients by their remote address | by their name once renamed.
      */
     private final Map<String, Connection> activeConnections;
 
+    /**
+     * Every active connection exactly once. Used for everything that visits all connections, since
+     * {@link #activeConnections} is only an index by key.
+     */
+    private final Set<Connection> connections;
+
+    /**
+     * Subscribed connections by topic. Publishing iterates the weakly consistent sets, so it never blocks subscribing.
+     */
+    private final Map<String, Set<Connection>> topics;
+
+    /**
+     * Subscribed topics by connection. Used to clean up once a connection is closed.
+     */
+    private final Map<Connection, Set<String>> subscriptions;
+
     /**
      * The ExecutorService to use for the {@link ServerThread} (accepting new connections).
      */
@@ -60,10 +91,11 @@ public class Server extends AbstractPacketManager {
     private ExecutorService serverThreadExecutor;
 
     /**
-     * The ExecutorService to use for any {@link Connection} threads.
+     * The amount of broadcast & publish targets which were skipped because they were above their high watermark.
      */
-    @Setter
-    private ExecutorService connectionThreadExecutor;
+    @Getter(AccessLevel.NONE)
+    private final LongAdder skippedTargets;
+
 
 
     // ======================   CONSTRUCTOR
@@ -74,14 +106,30 @@ public class Server extends AbstractPacketManager {
         this.port = port;
         this.running = false;
         this.activeConnections = new ConcurrentHashMap<>();
-        this.serverThreadExecutor = ForkJoinPool.commonPool();
-        this.connectionThreadExecutor = ForkJoinPool.commonPool();
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.topics = new ConcurrentHashMap<>();
+        this.subscriptions = new ConcurrentHashMap<>();
+        this.skippedTargets = new LongAdder();
+        this.serverThreadExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("JNet-ServerThread-"));
 
         addPacketHandler(NameChangePacket.class, (p, conn) -> {
 
-            getActiveConnections().remove(p.getOldName(), conn);
+            // The connection is stored by its remote address until its first rename & by its name afterwards
+            SocketAddress remote = conn.getSocket().getRemoteSocketAddress();
+            if (remote != null) getActiveConnections().remove(remote.toString(), conn);
+            getActiveConnections().remove(conn.getName(), conn);
+
             conn.setName(p.getNewName());
-            getActiveConnections().put(p.getNewName(), conn);
+            Connection displaced = getActiveConnections().put(p.getNewName(), conn);
+
+            // Keep a connection which used the same name reachable by its address
+            if (displaced != null && displaced != conn && !displaced.isClosed()) {
+                SocketAddress displacedRemote = displaced.getSocket().getRemoteSocketAddress();
+                if (displacedRemote != null) getActiveConnections().putIfAbsent(displacedRemote.toString(), displaced);
+            }
+
+            // Closed while renaming
+            if (conn.isClosed()) getActiveConnections().remove(p.getNewName(), conn);
 
         });
     }
@@ -99,13 +147,21 @@ public class Server extends AbstractPacketManager {
      *
      * @return Whether the server was started ({@code false} if it is already running)
      * @throws IOException
+     *          If the socket could not be bound or the server was already stopped
      */
     public boolean start() throws IOException {
 
         // RET: Already running!
         if (isRunning()) return false;
 
-        this.serverSocket = new ServerSocket();
+        // RET: Threads are gone!
+        if (isShutdown())
+            throw new IOException("[JNet] Server was stopped & cannot be started again");
+
+        // NIO connections need a channel backed socket
+        this.serverSocket = getTransportType() == TransportType.NIO
+                ? ServerSocketChannel.open().socket()
+                : new ServerSocket();
         this.serverSocket.bind(new InetSocketAddress(InetAddress.getByName(getHost()), getPort()));
         getServerThreadExecutor().submit(new ServerThread(this));
         this.running = true;
@@ -113,8 +169,9 @@ public class Server extends AbstractPacketManager {
     }
 
     /**
-     * Tells the server to stop.
-     * Note: This might not instantly shut it down.
+     * Stops accepting connections, closes all connections & stops every thread of the server
+     * (see {@link #shutdown()}).
+     * Note: The server cannot be started again.
      *
      * @return Whether the server was told to stop ({@code false} if it is not running)
      */
@@ -123,8 +180,14 @@ public class Server extends AbstractPacketManager {
         // RET: Not running!
         if (!isRunning()) return false;
 
-        getEventLoop().stop();
         this.running = false;
+        try { getServerSocket().close(); }
+        catch (IOException e) {
+            log.error(ExceptionUtils.getStackTraceAsString(e));
+        }
+
+        getServerThreadExecutor().shutdownNow();
+        shutdown();
         return true;
     }
 
@@ -175,4 +238,225 @@ public class Server extends AbstractPacketManager {
         return connection.send(packet);
     }
 
+    /**
+     * Sends a packet to all active connections matching a filter.
+     * The packet is encoded only once & the same frame is written to every target.
+     * Note: A slow connection never delays the remaining targets. With {@link BackpressureMode#BLOCK} targets above
+     * their high watermark are skipped (see {@link #getSkippedTargets()}), the other modes apply per target.
+     *
+     * @param packet
+     *          The packet to send
+     * @param filter
+     *          Decides which connections receive the packet
+     * @return
+     *          A future that completes once the packet was queued on every target | fails if any target failed
+     * @throws IOException
+     *          If the packet could not be encoded
+     */
+    public CompletableFuture<Void> broadcast(AbstractPacket packet, Predicate<Connection> filter) throws IOException {
+        return sendEncoded(new EncodedPacket(this, packet), connections, filter);
+    }
+
+    /**
+     * Wrapper around {@link #broadcast(AbstractPacket, Predicate)} sending to all active connections.
+     *
+     * @param packet
+     *          The packet to send
+     * @return
+     *          A future that completes once the packet was queued on every target | fails if any target failed
+     * @throws IOException
+     *          If the packet could not be encoded
+     */
+    public CompletableFuture<Void> broadcast(AbstractPacket packet) throws IOException {
+        return broadcast(packet, connection -> true);
+    }
+
+    /**
+     * Writes an encoded packet to multiple connections without blocking on any of them.
+     *
+     * @param encoded
+     *          The encoded packet
+     * @param targets
+     *          The connections to write to
+     * @param filter
+     *          Decides which targets receive the packet
+     * @return
+     *          A future that completes once the packet was queued on every target | fails if any target failed
+     */
+    private CompletableFuture<Void> sendEncoded(EncodedPacket encoded, Collection<Connection> targets, Predicate<Connection> filter) {
+        List<CompletableFuture<Void>> results = new ArrayList<>(targets.size());
+        boolean skip = getBackpressureMode() == BackpressureMode.BLOCK;
+        BackpressureMode mode = skip ? BackpressureMode.FAIL : getBackpressureMode();
+
+        for (Connection connection : targets) {
+            if (connection.isClosed() || !filter.test(connection)) continue;
+
+            try {
+                CompletableFuture<Void> result = connection.sendRaw(encoded, mode);
+
+                // Fails right away once the target is above its high watermark
+                if (skip && result.isCompletedExceptionally() && !connection.isClosed()) {
+                    skippedTargets.increment();
+                    continue;
+                }
+
+                results.add(result);
+            }
+            catch (IOException e) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                results.add(failed);
+            }
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]));
+    }
+
+
+    // ======================   TOPICS
+
+    /**
+     * Subscribes a connection to a topic. The subscription is removed automatically once the connection is closed.
+     *
+     * @param connection
+     *          The connection
+     * @param topic
+     *          The name of the topic
+     * @return
+     *          {@code true} if subscribed | {@code false} if it was already subscribed or is closed
+     */
+    public boolean subscribe(Connection connection, String topic) {
+
+        // RET: Closed connections would never be cleaned up!
+        if (connection.isClosed()) return false;
+
+        subscriptions.computeIfAbsent(connection, c -> ConcurrentHashMap.newKeySet()).add(topic);
+        boolean added = topics.computeIfAbsent(topic, t -> ConcurrentHashMap.newKeySet()).add(connection);
+
+        // Closed while subscribing
+        if (connection.isClosed()) unsubscribeAll(connection);
+        return added;
+    }
+
+    /**
+     * Unsubscribes a connection from a topic.
+     *
+     * @param connection
+     *          The connection
+     * @param topic
+     *          The name of the topic
+     * @return
+     *          {@code true} if unsubscribed | {@code false} if it was not subscribed
+     */
+    public boolean unsubscribe(Connection connection, String topic) {
+        Set<String> subscribed = subscriptions.get(connection);
+        if (subscribed != null) subscribed.remove(topic);
+
+        Set<Connection> subscribers = topics.get(topic);
+        return subscribers != null && subscribers.remove(connection);
+    }
+
+    /**
+     * Unsubscribes a connection from all topics.
+     *
+     * @param connection
+     *          The connection
+     */
+    public void unsubscribeAll(Connection connection) {
+        Set<String> subscribed = subscriptions.remove(connection);
+
+        // RET: No subscriptions!
+        if (subscribed == null) return;
+
+        for (String topic : subscribed) {
+            Set<Connection> subscribers = topics.get(topic);
+            if (subscribers != null) subscribers.remove(connection);
+        }
+    }
+
+    /**
+     * Sends a packet to all subscribers of a topic. The packet is encoded only once.
+     * Note: Slow subscribers are handled like the targets of {@link #broadcast(AbstractPacket, Predicate)}.
+     *
+     * @param topic
+     *          The name of the topic
+     * @param packet
+     *          The packet to send
+     * @return
+     *          A future that completes once the packet was queued on every subscriber | fails if any subscriber failed
+     * @throws IOException
+     *          If the packet could not be encoded
+     */
+    public CompletableFuture<Void> publish(String topic, AbstractPacket packet) throws IOException {
+        Set<Connection> subscribers = topics.get(topic);
+
+        // RET: No subscribers!
+        if (subscribers == null || subscribers.isEmpty())
+            return CompletableFuture.completedFuture(null);
+
+        return sendEncoded(new EncodedPacket(this, packet), subscribers, connection -> true);
+    }
+
+    /**
+     * Returns the amount of connections subscribed to a topic.
+     *
+     * @param topic
+     *          The name of the topic
+     * @return
+     *          The amount of subscribers
+     */
+    public int getSubscriberCount(String topic) {
+        Set<Connection> subscribers = topics.get(topic);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    /**
+     * Returns the amount of broadcast & publish targets which were skipped because they were above their high
+     * watermark. Only counted with {@link BackpressureMode#BLOCK}.
+     *
+     * @return
+     *          The amount of skipped targets
+     */
+    public long getSkippedTargets() {
+        return skippedTargets.sum();
+    }
+
+    @Override
+    public Collection<Connection> getConnections() {
+        return Collections.unmodifiableSet(connections);
+    }
+
+    /**
+     * Adds a started connection to the active connections.
+     *
+     * @param key
+     *          The key to store the connection under (remote address)
+     * @param connection
+     *          The connection
+     */
+    void addConnection(String key, Connection connection) {
+        connections.add(connection);
+        getActiveConnections().put(key, connection);
+
+        // Closed before it was added
+        if (connection.isClosed()) {
+            connections.remove(connection);
+            getActiveConnections().remove(key, connection);
+        }
+    }
+
+    @Override
+    protected void onConnectionClosed(Connection connection) {
+        unsubscribeAll(connection);
+        connections.remove(connection);
+
+        // Connections are stored by their remote address & additionally by their name once renamed
+        SocketAddress remote = connection.getSocket().getRemoteSocketAddress();
+        boolean removed = remote != null && getActiveConnections().remove(remote.toString(), connection);
+        removed |= getActiveConnections().remove(connection.getName(), connection);
+
+        // Fall back to a full scan for keys which are neither
+        if (!removed) getActiveConnections().values().remove(connection);
+    }
+
 }
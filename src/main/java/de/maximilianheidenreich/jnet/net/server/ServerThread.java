@@ -1,15 +1,12 @@
 package de.maximilianheidenreich.jnet.net.server;
 
 import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
-import de.maximilianheidenreich.jnet.events.RecvPacketEvent;
 import de.maximilianheidenreich.jnet.net.Connection;
-import de.maximilianheidenreich.jnet.packets.AbstractPacket;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.concurrent.ForkJoinPool;
 
 /**
  * A server thread that handles new connections.
@@ -53,13 +50,15 @@ public class ServerThread implements Runnable {
 
                 log.debug(String.format("[JNet] Accepted connection from %s", acceptedSocket.getRemoteSocketAddress()));
 
-                Connection connection = new Connection(getServer(), acceptedSocket);
+                Connection connection = getServer().startConnection(acceptedSocket);
 
-                getServer().getActiveConnections().put(acceptedSocket.getRemoteSocketAddress().toString(), connection);
-
-                ForkJoinPool.commonPool().submit(connection);
+                getServer().addConnection(acceptedSocket.getRemoteSocketAddress().toString(), connection);
             }
             catch (IOException e) {
+
+                // RET: Server was stopped!
+                if (getServer().getServerSocket().isClosed()) return;
+
                log.error(ExceptionUtils.getStackTraceAsString(e));
             }
         }
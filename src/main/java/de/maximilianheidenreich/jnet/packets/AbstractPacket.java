@@ -1,5 +1,6 @@
 package de.maximilianheidenreich.jnet.packets;
 
+import de.maximilianheidenreich.jnet.utils.CoarseClock;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -16,27 +17,41 @@ public class AbstractPacket implements Serializable {
     // ======================   VARS
 
     /**
-     * A unique id identifying the packet.
+     * A unique id identifying the packet. Lazily generated by {@link #getId()}.
      */
     @Setter
     private UUID id;
 
+    /**
+     * The per connection sequence id assigned when the packet was sent using
+     * {@link de.maximilianheidenreich.jnet.net.CorrelationMode#SEQUENCE} | 0 = none.
+     */
+    @Setter
+    private long sequenceId;
+
+    /**
+     * The sequence id of the request this packet responds to | 0 = none.
+     */
+    @Setter
+    private long correlationId;
+
     /**
      * The timestamp after which the packet will get dropped by the handler and no callbacks will be executed.
      * Note: 0 = NEVER | This should not be used although possible for some rare edge cases. Default is 5min.
+     * It is sent as the remaining time to live & rebased to the clock of the receiver, so clock skew between hosts
+     * does not matter. The time the packet spends on the network is not subtracted.
+     * Transient, because the frame header already carries it & java serialization would ship the absolute timestamp.
      */
     @Getter
-    private long timout = 0;
+    private transient long timout = 0;
 
 
     // ======================   CONSTRUCTOR
 
     /**
-     * Create a new AbstractPacket with a random id.
+     * Create a new AbstractPacket. A random id is generated once it is needed.
      */
-    public AbstractPacket() {
-        this.id = UUID.randomUUID();
-    }
+    public AbstractPacket() {}
 
     /**
      * Creates a new AbstractPacket with a specified id & default timeout of 5min.
@@ -52,9 +67,56 @@ public class AbstractPacket implements Serializable {
 
     // ======================   HELPERS
 
+    /**
+     * Returns the unique id of the packet & generates a random one if none was set yet.
+     *
+     * @return
+     *          The id
+     */
+    public UUID getId() {
+        if (this.id == null)
+            this.id = UUID.randomUUID();
+        return this.id;
+    }
+
+    /**
+     * Checks whether an id was already set or generated, without generating one.
+     *
+     * @return
+     *          {@code true} if the packet has an id | {@code false} if not
+     */
+    public boolean hasId() {
+        return this.id != null;
+    }
+
+    /**
+     * Marks this packet as the response to a request, so it completes the callback of the request.
+     * Works for {@link de.maximilianheidenreich.jnet.net.CorrelationMode#UUID} & {@link de.maximilianheidenreich.jnet.net.CorrelationMode#SEQUENCE}.
+     *
+     * @param request
+     *          The request to respond to
+     */
+    public void replyTo(AbstractPacket request) {
+        this.id = request.id;
+        this.correlationId = request.sequenceId;
+    }
+
+    /**
+     * Returns the priority class of the packet. Override this to send packets of a type as
+     * {@link PacketPriority#CONTROL} or {@link PacketPriority#BULK}.
+     * Note: Both peers need the same classes, as the receiver uses it to order handling.
+     *
+     * @return
+     *          The priority
+     */
+    public PacketPriority getPriority() {
+        return PacketPriority.INTERACTIVE;
+    }
+
     @Override
     public String toString() {
-        return String.format("%s(%s)-t%d", this.getClass().getSimpleName(), getId().toString().split("-")[0], getTimout());
+        String id = hasId() ? Long.toHexString(this.id.getMostSignificantBits() >>> 32) : "#" + getSequenceId();
+        return this.getClass().getSimpleName() + "(" + id + ")-t" + getTimout();
     }
 
     /**
@@ -66,7 +128,32 @@ public class AbstractPacket implements Serializable {
      *          The {@link TimeUnit} of time
      */
     public void setTimout(int time, TimeUnit unit) {
-        this.timout = System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(time, unit);
+        this.timout = CoarseClock.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(time, unit);
+    }
+
+    /**
+     * Limits the timeout of this packet to the one of another packet. Use this inside of a handler to pass the
+     * remaining time of a request on to the requests sent while handling it.
+     *
+     * @param request
+     *          The packet whose timeout should not be exceeded
+     */
+    public void inheritTimout(AbstractPacket request) {
+
+        // RET: Request never times out!
+        if (request.timout == 0) return;
+
+        this.timout = this.timout == 0 ? request.timout : Math.min(this.timout, request.timout);
+    }
+
+    /**
+     * Sets the absolute timeout timestamp.
+     *
+     * @param timout
+     *          The timestamp in milliseconds | 0 = NEVER
+     */
+    public void setTimout(long timout) {
+        this.timout = timout;
     }
 
     /**
@@ -76,7 +163,23 @@ public class AbstractPacket implements Serializable {
      *          {@code true} if current time > timout | {@code false} if not
      */
     public boolean isTimeout() {
-        return (this.timout != 0 && System.currentTimeMillis() > this.timout);
+        return (this.timout != 0 && CoarseClock.currentTimeMillis() > this.timout);
+    }
+
+    /**
+     * Returns how much time is left until the packet times out.
+     *
+     * @param unit
+     *          The {@link TimeUnit} of the result
+     * @return
+     *          The remaining time | 0 if timed out | {@link Long#MAX_VALUE} if the packet never times out
+     */
+    public long getRemaining(TimeUnit unit) {
+
+        // RET: Never times out!
+        if (this.timout == 0) return Long.MAX_VALUE;
+
+        return unit.convert(Math.max(0, this.timout - CoarseClock.currentTimeMillis()), TimeUnit.MILLISECONDS);
     }
 
 }
@@ -44,7 +44,9 @@ public class ExceptionPacket extends AbstractPacket {
      *          The generated packet
      */
     public static ExceptionPacket fromPacket(AbstractPacket packet, Exception exception) {
-        return new ExceptionPacket(packet.getId(), exception);
+        ExceptionPacket exceptionPacket = new ExceptionPacket(packet.getId(), exception);
+        exceptionPacket.replyTo(packet);
+        return exceptionPacket;
     }
 
 }
@@ -0,0 +1,114 @@
+package de.maximilianheidenreich.jnet.packets;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Announces a file sent using {@link de.maximilianheidenreich.jnet.net.Connection#sendFile(Path, Map)}.
+ * The content follows the packet in chunks & can be read through {@link #getChannel()} or written to disk using
+ * {@link #saveTo(Path)} while the handlers of this packet run. The channel is closed once all handlers returned.
+ * Reply to the packet to complete the callback of the sender.
+ * Note: The handlers run on their own thread (see
+ * {@link de.maximilianheidenreich.jnet.net.AbstractPacketManager#setFileReceiverExecutor}), so other packets of the
+ * connection are handled in the meantime. Reading from the connection pauses while the file is not consumed.
+ */
+@Getter
+public class FilePacket extends AbstractPacket {
+
+    // ======================   VARS
+
+    /**
+     * Identifies the chunks of the file on its connection.
+     */
+    private final int streamId;
+
+    /**
+     * The size of the file in bytes.
+     */
+    private final long size;
+
+    /**
+     * Custom data describing the file (name, checksum, ...).
+     */
+    private final HashMap<String, String> metadata;
+
+    /**
+     * The content of the file | {@code null} on the sending side.
+     * Note: Set by the receiving connection.
+     */
+    @Setter
+    private transient ReadableByteChannel channel;
+
+
+    // ======================   CONSTRUCTOR
+
+    public FilePacket(int streamId, long size, Map<String, String> metadata) {
+        super();
+        this.streamId = streamId;
+        this.size = size;
+        this.metadata = metadata == null ? new HashMap<>() : new HashMap<>(metadata);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Streams the content of the file to disk.
+     * Note: Can only be called once as it consumes the channel.
+     *
+     * @param path
+     *          The target file (created or truncated)
+     * @return
+     *          The amount of written bytes
+     * @throws IOException
+     *          If the connection was closed before the whole file was received
+     */
+    public long saveTo(Path path) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+
+            while (position < getSize()) {
+                long transferred = out.transferFrom(getChannel(), position, getSize() - position);
+
+                // RET: Content ended early!
+                if (transferred <= 0)
+                    throw new EOFException("File ended after " + position + " of " + getSize() + " bytes");
+
+                position += transferred;
+            }
+
+            return position;
+        }
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Returns a single metadata entry.
+     *
+     * @param key
+     *          The key
+     * @return
+     *          The value | {@code null} if not present
+     */
+    public String getMetadata(String key) {
+        return getMetadata().get(key);
+    }
+
+    @Override
+    public PacketPriority getPriority() {
+        return PacketPriority.BULK;
+    }
+
+}
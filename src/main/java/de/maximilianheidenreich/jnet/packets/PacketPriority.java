@@ -0,0 +1,36 @@
+package de.maximilianheidenreich.jnet.packets;
+
+/**
+ * The priority class of a packet (see {@link AbstractPacket#getPriority()}).
+ * Every class has its own outbound queue per connection & packets of a higher class are handled first by the
+ * receiver. Packets of the same class keep their order.
+ */
+public enum PacketPriority {
+
+    /**
+     * Small internal packets (name changes, heartbeats, ...). Always written & handled first and never held back
+     * by backpressure, so this should only be used for rare & tiny packets.
+     */
+    CONTROL,
+
+    /**
+     * Regular requests & responses. The default.
+     */
+    INTERACTIVE,
+
+    /**
+     * Data transfers. Only written in between interactive packets according to the interactive weight of the
+     * packet manager, so they can not starve.
+     */
+    BULK;
+
+    /**
+     * @return
+     *          The priority of the {@link de.maximilianheidenreich.jnet.events.RecvPacketEvent} of a packet in this
+     *          class (higher = more important)
+     */
+    public int getEventPriority() {
+        return values().length - 1 - ordinal();
+    }
+
+}
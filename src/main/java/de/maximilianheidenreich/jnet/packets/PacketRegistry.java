@@ -0,0 +1,239 @@
+package de.maximilianheidenreich.jnet.packets;
+
+import de.maximilianheidenreich.jnet.codec.PacketSerializer;
+import de.maximilianheidenreich.jnet.packets.core.HandshakePacket;
+import de.maximilianheidenreich.jnet.packets.core.NameChangePacket;
+import de.maximilianheidenreich.jnet.packets.core.TimingPacket;
+import lombok.Synchronized;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns compact numeric type ids to packet classes.
+ * The ids are declared up front and have to match on both peers. Ids below {@link #FIRST_USER_ID} are reserved
+ * for the core packets of JNet.
+ */
+public class PacketRegistry {
+
+    // ======================   VARS
+
+    /**
+     * The id returned for classes which are not registered.
+     */
+    public static final int UNREGISTERED = -1;
+
+    /**
+     * The first id that can be used for custom packets.
+     */
+    public static final int FIRST_USER_ID = 16;
+
+    /**
+     * The highest usable id (ids are written as short).
+     */
+    public static final int MAX_ID = Short.MAX_VALUE;
+
+    /**
+     * Registered classes indexed by their id.
+     */
+    private volatile Class<? extends AbstractPacket>[] classes;
+
+    /**
+     * Registered serializers indexed by their id. Entries may be {@code null}.
+     */
+    private volatile PacketSerializer<? extends AbstractPacket>[] serializers;
+
+    /**
+     * Caches the id per class so lookups do not need any hashing.
+     */
+    private final ClassValue<Integer> ids;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new PacketRegistry containing the core packets.
+     */
+    @SuppressWarnings("unchecked")
+    public PacketRegistry() {
+        this.classes = (Class<? extends AbstractPacket>[]) new Class<?>[FIRST_USER_ID];
+        this.serializers = new PacketSerializer<?>[FIRST_USER_ID];
+        this.ids = new ClassValue<Integer>() {
+            @Override
+            protected Integer computeValue(Class<?> type) {
+                Class<? extends AbstractPacket>[] registered = classes;
+                for (int i = 0; i < registered.length; i++)
+                    if (registered[i] == type) return i;
+                return UNREGISTERED;
+            }
+        };
+
+        register(0, NameChangePacket.class, new PacketSerializer<NameChangePacket>() {
+            @Override
+            public void write(NameChangePacket packet, DataOutput out) throws IOException {
+                out.writeUTF(packet.getOldName());
+                out.writeUTF(packet.getNewName());
+            }
+
+            @Override
+            public NameChangePacket read(DataInput in) throws IOException {
+                return new NameChangePacket(in.readUTF(), in.readUTF());
+            }
+        });
+        register(1, TimingPacket.class, new PacketSerializer<TimingPacket>() {
+            @Override
+            public void write(TimingPacket packet, DataOutput out) throws IOException {
+                out.writeLong(packet.getTimestamp());
+                out.writeByte((packet.isHeartbeat() ? 1 : 0) | (packet.isEcho() ? 2 : 0));
+            }
+
+            @Override
+            public TimingPacket read(DataInput in) throws IOException {
+                long timestamp = in.readLong();
+                int flags = in.readByte();
+                return new TimingPacket(timestamp, (flags & 1) != 0, (flags & 2) != 0);
+            }
+        });
+        register(2, ExceptionPacket.class, null);
+        register(3, HandshakePacket.class, new PacketSerializer<HandshakePacket>() {
+            @Override
+            public void write(HandshakePacket packet, DataOutput out) throws IOException {
+                out.writeUTF(packet.getCompression());
+            }
+
+            @Override
+            public HandshakePacket read(DataInput in) throws IOException {
+                return new HandshakePacket(in.readUTF());
+            }
+        });
+        register(4, FilePacket.class, new PacketSerializer<FilePacket>() {
+            @Override
+            public void write(FilePacket packet, DataOutput out) throws IOException {
+                out.writeInt(packet.getStreamId());
+                out.writeLong(packet.getSize());
+                out.writeInt(packet.getMetadata().size());
+                for (Map.Entry<String, String> entry : packet.getMetadata().entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+
+            @Override
+            public FilePacket read(DataInput in) throws IOException {
+                int streamId = in.readInt();
+                long size = in.readLong();
+                int entries = in.readInt();
+                Map<String, String> metadata = new HashMap<>();
+                for (int i = 0; i < entries; i++)
+                    metadata.put(in.readUTF(), in.readUTF());
+                return new FilePacket(streamId, size, metadata);
+            }
+        });
+    }
+
+
+    // ======================   REGISTRATION
+
+    /**
+     * Registers a packet class under a fixed id.
+     *
+     * @param id
+     *          The id to use
+     * @param clazz
+     *          The packet class
+     * @param serializer
+     *          An optional serializer used by the {@link de.maximilianheidenreich.jnet.codec.BinaryPacketCodec}
+     *          ({@code null} = use java serialization for the body)
+     * @throws IllegalArgumentException
+     *          If the id is out of range or already used by another class
+     */
+    @Synchronized
+    @SuppressWarnings("unchecked")
+    public <P extends AbstractPacket> void register(int id, Class<P> clazz, PacketSerializer<P> serializer) {
+
+        // RET: Invalid id!
+        if (id < 0 || id > MAX_ID)
+            throw new IllegalArgumentException("Packet id " + id + " is out of range");
+
+        Class<? extends AbstractPacket>[] newClasses = classes;
+        PacketSerializer<? extends AbstractPacket>[] newSerializers = serializers;
+
+        if (id >= newClasses.length) {
+            int size = Math.min(MAX_ID + 1, Math.max(id + 1, newClasses.length * 2));
+            newClasses = Arrays.copyOf(newClasses, size);
+            newSerializers = Arrays.copyOf(newSerializers, size);
+        }
+        else {
+            newClasses = newClasses.clone();
+            newSerializers = newSerializers.clone();
+        }
+
+        // RET: Id already taken!
+        if (newClasses[id] != null && newClasses[id] != clazz)
+            throw new IllegalArgumentException("Packet id " + id + " is already used by " + newClasses[id].getName());
+
+        newClasses[id] = clazz;
+        newSerializers[id] = serializer;
+        this.serializers = newSerializers;
+        this.classes = newClasses;
+        ids.remove(clazz);
+    }
+
+    /**
+     * Wrapper around {@link #register(int, Class, PacketSerializer)} without a serializer.
+     *
+     * @param id
+     *          The id to use
+     * @param clazz
+     *          The packet class
+     */
+    public <P extends AbstractPacket> void register(int id, Class<P> clazz) {
+        register(id, clazz, null);
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Returns the id of a packet class.
+     *
+     * @param clazz
+     *          The packet class
+     * @return
+     *          The id | {@link #UNREGISTERED} if the class is not registered
+     */
+    public int getId(Class<?> clazz) {
+        return ids.get(clazz);
+    }
+
+    /**
+     * Returns the class registered for an id.
+     *
+     * @param id
+     *          The id
+     * @return
+     *          The class | {@code null} if not registered
+     */
+    public Class<? extends AbstractPacket> getPacketClass(int id) {
+        Class<? extends AbstractPacket>[] registered = classes;
+        return id >= 0 && id < registered.length ? registered[id] : null;
+    }
+
+    /**
+     * Returns the serializer registered for an id.
+     *
+     * @param id
+     *          The id
+     * @return
+     *          The serializer | {@code null} if none was registered
+     */
+    public PacketSerializer<? extends AbstractPacket> getSerializer(int id) {
+        PacketSerializer<? extends AbstractPacket>[] registered = serializers;
+        return id >= 0 && id < registered.length ? registered[id] : null;
+    }
+
+}
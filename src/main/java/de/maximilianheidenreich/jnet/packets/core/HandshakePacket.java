@@ -0,0 +1,34 @@
+package de.maximilianheidenreich.jnet.packets.core;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketPriority;
+import lombok.Getter;
+
+/**
+ * Sent by both peers once a connection was set up to advertise their optional capabilities.
+ * It is handled by the connection itself & never reaches any packet handler.
+ */
+@Getter
+public class HandshakePacket extends AbstractPacket {
+
+    // ======================   VARS
+
+    /**
+     * The name of the compressor used by the sender | empty if compression is disabled.
+     */
+    private String compression;
+
+
+    // ======================   CONSTRUCTOR
+
+    public HandshakePacket(String compression) {
+        super();
+        this.compression = compression;
+    }
+
+    @Override
+    public PacketPriority getPriority() {
+        return PacketPriority.CONTROL;
+    }
+
+}
@@ -1,6 +1,7 @@
 package de.maximilianheidenreich.jnet.packets.core;
 
 import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketPriority;
 import lombok.Getter;
 
 /**
@@ -30,4 +31,9 @@ public class NameChangePacket extends AbstractPacket {
         this.newName = newName;
     }
 
+    @Override
+    public PacketPriority getPriority() {
+        return PacketPriority.CONTROL;
+    }
+
 }
@@ -1,10 +1,13 @@
 package de.maximilianheidenreich.jnet.packets.core;
 
 import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketPriority;
 import lombok.Getter;
 
 /**
- * A simple ping packet that
+ * A simple ping packet that carries a timestamp.
+ * Heartbeats sent by the packet manager are marked, so they are answered by the connection itself and never reach
+ * any packet handler.
  */
 @Getter
 public class TimingPacket extends AbstractPacket {
@@ -13,12 +16,28 @@ public class TimingPacket extends AbstractPacket {
 
     private long timestamp;
 
+    /**
+     * Whether this packet is a heartbeat of the packet manager.
+     */
+    private boolean heartbeat;
+
+    /**
+     * Whether this packet is the echo of a heartbeat. Echos are never answered, so heartbeats can not ping-pong.
+     */
+    private boolean echo;
+
 
     // ======================   CONSTRUCTOR
 
-    public TimingPacket(long timestamp) {
+    public TimingPacket(long timestamp, boolean heartbeat, boolean echo) {
         super();
         this.timestamp = timestamp;
+        this.heartbeat = heartbeat;
+        this.echo = echo;
+    }
+
+    public TimingPacket(long timestamp) {
+        this(timestamp, false, false);
     }
 
 
@@ -44,4 +63,19 @@ public class TimingPacket extends AbstractPacket {
         return new TimingPacket(System.currentTimeMillis());
     }
 
+    /**
+     * Creates the echo of a heartbeat which carries the original timestamp back to the sender.
+     *
+     * @return
+     *          The echo
+     */
+    public TimingPacket toEcho() {
+        return new TimingPacket(getTimestamp(), true, true);
+    }
+
+    @Override
+    public PacketPriority getPriority() {
+        return PacketPriority.CONTROL;
+    }
+
 }
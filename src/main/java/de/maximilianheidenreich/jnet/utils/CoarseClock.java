@@ -0,0 +1,61 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A shared wall clock with a resolution of a few milliseconds for checks that happen for every packet, like timeouts.
+ * A daemon thread refreshes the cached time every {@link #RESOLUTION_MILLIS}, so reading it is a single volatile
+ * read instead of asking the operating system. The thread is started once the clock is first read.
+ */
+public final class CoarseClock {
+
+    // ======================   VARS
+
+    /**
+     * How often the cached time is refreshed. Readers may see a time that is up to this much behind.
+     */
+    public static final long RESOLUTION_MILLIS = 10;
+
+    /**
+     * The cached time in milliseconds since the epoch.
+     */
+    private static volatile long now = System.currentTimeMillis();
+
+    static {
+        new DaemonThreadFactory("JNet-CoarseClock-").newThread(CoarseClock::tick).start();
+    }
+
+
+    // ======================   CONSTRUCTOR
+
+    private CoarseClock() {}
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the cached time. Same scale as {@link System#currentTimeMillis()}.
+     *
+     * @return
+     *          The time in milliseconds since the epoch
+     */
+    public static long currentTimeMillis() {
+        return now;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Refreshes the cached time until the JVM exits.
+     */
+    private static void tick() {
+        long resolutionNanos = RESOLUTION_MILLIS * 1_000_000;
+
+        while (true) {
+            now = System.currentTimeMillis();
+            LockSupport.parkNanos(resolutionNanos);
+        }
+    }
+
+}
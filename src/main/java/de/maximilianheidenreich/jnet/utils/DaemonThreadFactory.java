@@ -0,0 +1,47 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads, so JNet threads never keep the JVM alive.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    // ======================   VARS
+
+    /**
+     * The prefix of all thread names.
+     */
+    private final String namePrefix;
+
+    /**
+     * The number of the next thread.
+     */
+    private final AtomicInteger count;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new DaemonThreadFactory.
+     *
+     * @param namePrefix
+     *          The prefix of the thread names (followed by a counter)
+     */
+    public DaemonThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+        this.count = new AtomicInteger();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
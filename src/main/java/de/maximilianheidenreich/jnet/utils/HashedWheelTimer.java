@@ -0,0 +1,352 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import de.maximilianheidenreich.jeventloop.utils.ExceptionUtils;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel which expires huge amounts of {@link Timeout}s with O(1) cost per tick.
+ * Timeouts are placed into the bucket of their deadline tick & expired by a single worker thread, so scheduling &
+ * cancelling never need to lock. The worker is only started once the first timeout is scheduled.
+ */
+@Log4j
+public class HashedWheelTimer {
+
+    // ======================   VARS
+
+    /**
+     * The maximum amount of new timeouts moved into the wheel per tick to keep ticks short under load.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /**
+     * The duration of a single tick in nanoseconds.
+     */
+    @Getter
+    private final long tickNanos;
+
+    /**
+     * The buckets of the wheel.
+     */
+    private final Bucket[] wheel;
+
+    /**
+     * Used to map ticks onto buckets ({@code wheel.length - 1}).
+     */
+    private final int mask;
+
+    /**
+     * Timeouts waiting to be placed into the wheel.
+     */
+    private final Queue<Timeout> scheduled;
+
+    /**
+     * Cancelled timeouts waiting to be removed from the wheel.
+     */
+    private final Queue<Timeout> cancelled;
+
+    /**
+     * The {@link System#nanoTime()} at which the timer was started. All deadlines are relative to this.
+     */
+    private final long startTime;
+
+    /**
+     * Creates the worker thread.
+     */
+    private final ThreadFactory threadFactory;
+
+    /**
+     * The worker thread | {@code null} if not started yet.
+     */
+    private volatile Thread worker;
+
+    /**
+     * Whether the worker should keep ticking. Once stopped, the timer is never started again.
+     */
+    private volatile boolean running;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new timer. Its worker thread is started by the first scheduled timeout.
+     *
+     * @param name
+     *          The name prefix of the worker thread
+     * @param tickDuration
+     *          The duration of a single tick (= resolution)
+     * @param unit
+     *          The {@link TimeUnit} of tickDuration
+     * @param wheelSize
+     *          The amount of buckets (rounded up to the next power of two)
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.threadFactory = new DaemonThreadFactory(name + "-");
+        this.running = true;
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Schedules a timeout.
+     * Note: A timeout instance can only be scheduled once.
+     *
+     * @param timeout
+     *          The timeout to schedule
+     * @param delay
+     *          The delay after which the timeout expires (values <= 0 expire on the next tick)
+     * @param unit
+     *          The {@link TimeUnit} of delay
+     */
+    public void schedule(Timeout timeout, long delay, TimeUnit unit) {
+        timeout.timer = this;
+        timeout.deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        scheduled.add(timeout);
+
+        if (worker == null) start();
+    }
+
+    /**
+     * Stops the worker thread. Pending timeouts will not expire anymore.
+     */
+    public synchronized void stop() {
+        this.running = false;
+        if (worker != null) worker.interrupt();
+    }
+
+    /**
+     * Starts the worker thread unless it is already running or the timer was stopped.
+     */
+    private synchronized void start() {
+
+        // RET: Already started or stopped!
+        if (worker != null || !running) return;
+
+        this.worker = threadFactory.newThread(this::run);
+        worker.start();
+    }
+
+    /**
+     * The worker loop. Starts at the current tick, so a lazily started worker does not catch up on idle ticks.
+     */
+    private void run() {
+        long tick = (System.nanoTime() - startTime) / tickNanos;
+
+        while (running) {
+            long deadline = waitForNextTick(tick);
+
+            // RET: Stopped!
+            if (deadline < 0) return;
+
+            Bucket bucket = wheel[(int) (tick & mask)];
+            removeCancelled();
+            transferScheduled(tick);
+            bucket.expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the end of a tick.
+     *
+     * @param tick
+     *          The current tick
+     * @return
+     *          The deadline of the tick relative to {@link #startTime} | -1 if the timer was stopped
+     */
+    private long waitForNextTick(long tick) {
+        long deadline = tickNanos * (tick + 1);
+
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleep = deadline - current;
+
+            // RET: Tick reached!
+            if (sleep <= 0) return current;
+
+            LockSupport.parkNanos(this, sleep);
+
+            // RET: Stopped!
+            if (!running) return -1;
+        }
+    }
+
+    /**
+     * Moves newly scheduled timeouts into their buckets.
+     *
+     * @param tick
+     *          The current tick
+     */
+    private void transferScheduled(long tick) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+
+            // RET: Nothing left!
+            if (timeout == null) return;
+
+            if (timeout.state != Timeout.ST_INIT) continue;
+
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+
+            // Timeouts that are already due go into the current bucket
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Removes all cancelled timeouts from their buckets.
+     */
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+
+    // ======================   TIMEOUT
+
+    /**
+     * A task that runs once its deadline passed unless it was cancelled before.
+     * Subclass it to attach the data needed by {@link #expire()}, so no additional wrapper gets allocated.
+     */
+    public abstract static class Timeout {
+
+        private static final int ST_INIT = 0, ST_CANCELLED = 1, ST_EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private volatile int state;
+        private HashedWheelTimer timer;
+        private long deadline;
+        private long remainingRounds;
+        private Timeout next, prev;
+        private Bucket bucket;
+
+        /**
+         * Cancels the timeout.
+         *
+         * @return
+         *          {@code true} if cancelled | {@code false} if it already expired or was cancelled
+         */
+        public boolean cancel() {
+
+            // RET: Already expired or cancelled!
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED))
+                return false;
+
+            if (timer != null)
+                timer.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * @return
+         *          {@code true} if the timeout was cancelled
+         */
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        /**
+         * @return
+         *          {@code true} if the timeout expired
+         */
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        /**
+         * Runs the task if the timeout was not cancelled.
+         */
+        private void runExpired() {
+
+            // RET: Cancelled in the meantime!
+            if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED))
+                return;
+
+            try { expire(); }
+            catch (Throwable t) {
+                log.error(ExceptionUtils.getStackTraceAsString(t));
+            }
+        }
+
+        /**
+         * Gets called on the timer thread once the deadline passed.
+         * Note: Should return quickly as it delays all other timeouts.
+         */
+        protected abstract void expire();
+
+    }
+
+
+    // ======================   BUCKET
+
+    /**
+     * A doubly linked list of timeouts. Only touched by the worker thread.
+     */
+    private static final class Bucket {
+
+        private Timeout head, tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) head = tail = timeout;
+            else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) timeout.prev.next = next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == head) head = next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline) timeout.runExpired();
+                    else log.error("[JNet] Timeout placed into a wrong bucket");
+                }
+                else if (timeout.isCancelled()) remove(timeout);
+                else timeout.remainingRounds--;
+
+                timeout = next;
+            }
+        }
+
+    }
+
+}
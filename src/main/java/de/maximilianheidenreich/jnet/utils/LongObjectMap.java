@@ -0,0 +1,274 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A very basic open addressing hash map with primitive {@code long} keys.
+ * It uses linear probing & backward shift deletion, so neither puts nor removes allocate anything (except for resizes).
+ * Note: The key {@code 0} is reserved & this class is not thread safe.
+ *
+ * @param <V>
+ *              The type of the values
+ */
+public class LongObjectMap<V> {
+
+    // ======================   VARS
+
+    /**
+     * The keys | 0 = free slot.
+     */
+    private long[] keys;
+
+    /**
+     * The values at the same index as their key.
+     */
+    private Object[] values;
+
+    /**
+     * The amount of stored entries.
+     */
+    private int size;
+
+    /**
+     * Used to map hashes onto slots ({@code keys.length - 1}).
+     */
+    private int mask;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new LongObjectMap.
+     *
+     * @param expectedSize
+     *          The amount of entries that fit without resizing
+     */
+    public LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the value stored for a key.
+     *
+     * @param key
+     *          The key (must not be 0)
+     * @return
+     *          The value | {@code null} if not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Stores a value.
+     *
+     * @param key
+     *          The key (must not be 0)
+     * @param value
+     *          The value
+     * @return
+     *          The previous value | {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0)
+            throw new IllegalArgumentException("Key 0 is reserved");
+
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if (++size > keys.length / 2)
+            resize(keys.length * 2);
+        return null;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key
+     *          The key
+     * @return
+     *          The removed value | {@code null} if not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+
+        // RET: Not present!
+        if (index < 0) return null;
+
+        V old = (V) values[index];
+        removeAt(index);
+        return old;
+    }
+
+    /**
+     * Removes a key only if it is mapped to the specified value.
+     *
+     * @param key
+     *          The key
+     * @param value
+     *          The expected value (compared by identity)
+     * @return
+     *          {@code true} if removed | {@code false} if not
+     */
+    public boolean remove(long key, V value) {
+        int index = indexOf(key);
+
+        // RET: Not present or different value!
+        if (index < 0 || values[index] != value) return false;
+
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Calls the consumer for every value.
+     *
+     * @param consumer
+     *          The consumer
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> consumer) {
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != 0) consumer.accept((V) values[i]);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * @return
+     *          The amount of stored entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return
+     *          {@code true} if no entries are stored
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the slot index of a key.
+     *
+     * @param key
+     *          The key
+     * @return
+     *          The index | -1 if not present
+     */
+    private int indexOf(long key) {
+
+        // RET: Reserved key is never present!
+        if (key == 0) return -1;
+
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Calculates the preferred slot of a key.
+     *
+     * @param key
+     *          The key
+     * @return
+     *          The slot
+     */
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Removes the entry at an index & shifts following entries of the same cluster back.
+     *
+     * @param index
+     *          The index to free
+     */
+    private void removeAt(int index) {
+        size--;
+
+        int free = index;
+        int slot = (index + 1) & mask;
+        while (keys[slot] != 0) {
+            int preferred = slot(keys[slot]);
+
+            // Move the entry if its preferred slot is not between the free slot & its current slot
+            if (((slot - preferred) & mask) >= ((slot - free) & mask)) {
+                keys[free] = keys[slot];
+                values[free] = values[slot];
+                free = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[free] = 0;
+        values[free] = null;
+    }
+
+    /**
+     * Rehashes all entries into bigger arrays.
+     *
+     * @param capacity
+     *          The new capacity
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) continue;
+
+            int slot = slot(oldKeys[i]);
+            while (keys[slot] != 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads without requiring Java 21 at compile time.
+ * This is the Java 8 fallback. On Java 21+ the multi-release jar replaces it with an implementation backed by
+ * {@code Thread.ofVirtual()}.
+ */
+public final class VirtualThreads {
+
+    // ======================   CONSTRUCTOR
+
+    private VirtualThreads() {}
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * @return
+     *          {@code true} if the running JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor which runs every task on a new virtual thread.
+     *
+     * @param namePrefix
+     *          The prefix of the thread names (followed by a counter)
+     * @return
+     *          The executor
+     * @throws UnsupportedOperationException
+     *          If virtual threads are not supported (see {@link #isSupported()})
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21+");
+    }
+
+}
@@ -0,0 +1,39 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads without requiring Java 21 at compile time.
+ * This is the Java 21+ implementation which is loaded from the multi-release jar.
+ */
+public final class VirtualThreads {
+
+    // ======================   CONSTRUCTOR
+
+    private VirtualThreads() {}
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * @return
+     *          {@code true} if the running JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor which runs every task on a new virtual thread.
+     *
+     * @param namePrefix
+     *          The prefix of the thread names (followed by a counter)
+     * @return
+     *          The executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+
+}
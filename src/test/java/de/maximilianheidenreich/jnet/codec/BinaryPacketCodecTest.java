@@ -0,0 +1,151 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryPacketCodecTest {
+
+    private PacketRegistry registry;
+    private BinaryPacketCodec codec;
+
+    @BeforeEach
+    void setUp() {
+        this.registry = new PacketRegistry();
+        registry.register(PacketRegistry.FIRST_USER_ID, PointPacket.class, new PointSerializer());
+        registry.register(PacketRegistry.FIRST_USER_ID + 1, LabelPacket.class);
+        this.codec = new BinaryPacketCodec(registry);
+    }
+
+    @Test
+    void registeredPacketIsWrittenByItsSerializer() throws IOException {
+        PointPacket packet = new PointPacket(3, -7);
+        UUID id = packet.getId();
+        byte[] frame = encode(codec, packet);
+
+        PacketHeader header = new PacketHeader();
+        assertTrue(codec.readHeader(frame, 0, frame.length, header));
+        assertEquals(PacketRegistry.FIRST_USER_ID, header.getTypeId());
+        assertFalse(header.isSerialized());
+
+        PointPacket decoded = (PointPacket) codec.decode(frame, 0, frame.length);
+        assertEquals(3, decoded.x);
+        assertEquals(-7, decoded.y);
+        assertEquals(id, decoded.getId());
+    }
+
+    @Test
+    void idsAndTimeoutSurviveRoundTrip() throws IOException {
+        PointPacket packet = new PointPacket(1, 2);
+        packet.setSequenceId(42);
+        packet.setCorrelationId(7);
+        packet.setTimout(10, TimeUnit.SECONDS);
+        byte[] frame = encode(codec, packet);
+
+        AbstractPacket decoded = codec.decode(frame, 0, frame.length);
+        assertEquals(42, decoded.getSequenceId());
+        assertEquals(7, decoded.getCorrelationId());
+        assertTrue(decoded.getRemaining(TimeUnit.SECONDS) > 0);
+        assertFalse(decoded.isTimeout());
+    }
+
+    @Test
+    void packetWithoutSerializerFallsBackToJavaSerialization() throws IOException {
+        byte[] frame = encode(codec, new LabelPacket("registered"));
+
+        PacketHeader header = new PacketHeader();
+        codec.readHeader(frame, 0, frame.length, header);
+        assertEquals(PacketRegistry.FIRST_USER_ID + 1, header.getTypeId());
+        assertTrue(header.isSerialized());
+        assertEquals("registered", ((LabelPacket) codec.decode(frame, 0, frame.length)).label);
+    }
+
+    @Test
+    void unregisteredPacketFallsBackToJavaSerialization() throws IOException {
+        byte[] frame = encode(codec, new UnregisteredPacket());
+
+        PacketHeader header = new PacketHeader();
+        codec.readHeader(frame, 0, frame.length, header);
+        assertEquals(PacketRegistry.UNREGISTERED, header.getTypeId());
+        assertTrue(header.isSerialized());
+        assertInstanceOf(UnregisteredPacket.class, codec.decode(frame, 0, frame.length));
+    }
+
+    @Test
+    void decodesFramesOfJavaSerializationCodec() throws IOException {
+        byte[] frame = encode(new JavaSerializationCodec(registry), new PointPacket(5, 6));
+
+        PointPacket decoded = (PointPacket) codec.decode(frame, 0, frame.length);
+        assertEquals(5, decoded.x);
+        assertEquals(6, decoded.y);
+    }
+
+    @Test
+    void unknownTypeIdWithoutSerializerFails() throws IOException {
+        byte[] frame = encode(codec, new PointPacket(1, 1));
+
+        // The receiver does not know the type
+        BinaryPacketCodec receiver = new BinaryPacketCodec();
+        assertThrows(IOException.class, () -> receiver.decode(frame, 0, frame.length));
+    }
+
+    private static byte[] encode(PacketCodec codec, AbstractPacket packet) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(packet, out);
+        return out.toByteArray();
+    }
+
+    static class PointPacket extends AbstractPacket {
+
+        private final int x, y;
+
+        PointPacket(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+    }
+
+    static class PointSerializer implements PacketSerializer<PointPacket> {
+
+        @Override
+        public void write(PointPacket packet, DataOutput out) throws IOException {
+            out.writeInt(packet.x);
+            out.writeInt(packet.y);
+        }
+
+        @Override
+        public PointPacket read(DataInput in) throws IOException {
+            return new PointPacket(in.readInt(), in.readInt());
+        }
+
+    }
+
+    static class LabelPacket extends AbstractPacket {
+
+        private final String label;
+
+        LabelPacket(String label) {
+            this.label = label;
+        }
+
+    }
+
+    static class UnregisteredPacket extends AbstractPacket {
+    }
+
+}
@@ -0,0 +1,75 @@
+package de.maximilianheidenreich.jnet.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeflateCompressorTest {
+
+    private final DeflateCompressor compressor = new DeflateCompressor();
+
+    @Test
+    void decompressRestoresData() throws Exception {
+        byte[] data = repeat("hello world ", 1000);
+
+        // Compress from the middle of a buffer, so offset & length are honored
+        byte[] buffer = new byte[data.length + 8];
+        System.arraycopy(data, 0, buffer, 4, data.length);
+        byte[] compressed = compress(buffer, 4, data.length);
+        assertTrue(compressed.length < data.length / 10);
+
+        byte[] out = new byte[data.length + 2];
+        compressor.decompress(compressed, 0, compressed.length, out, 1, data.length);
+        assertArrayEquals(data, Arrays.copyOfRange(out, 1, data.length + 1));
+    }
+
+    @Test
+    void decompressRejectsWrongLength() throws Exception {
+        byte[] data = repeat("abc", 100);
+        byte[] compressed = compress(data, 0, data.length);
+
+        assertThrows(IOException.class,
+                () -> compressor.decompress(compressed, 0, compressed.length, new byte[data.length - 1], 0, data.length - 1));
+        assertThrows(IOException.class,
+                () -> compressor.decompress(compressed, 0, compressed.length, new byte[data.length + 1], 0, data.length + 1));
+    }
+
+    @Test
+    void decompressRejectsInvalidData() {
+        byte[] garbage = repeat("not deflate", 10);
+
+        assertThrows(IOException.class, () -> compressor.decompress(garbage, 0, garbage.length, new byte[64], 0, 64));
+    }
+
+    @Test
+    void threadReusesStateAcrossFrames() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            byte[] data = repeat("frame " + i + " ", 200);
+            byte[] compressed = compress(data, 0, data.length);
+            byte[] out = new byte[data.length];
+            compressor.decompress(compressed, 0, compressed.length, out, 0, out.length);
+            assertArrayEquals(data, out);
+        }
+    }
+
+    private byte[] compress(byte[] data, int offset, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compressor.compress(data, offset, length, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            builder.append(text);
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,123 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.net.server.Server;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkingTest {
+
+    private Server server;
+    private Client client;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) client.disconnect();
+        if (server != null) server.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void bigPacketIsReassembledFromChunks(TransportType transport) throws Exception {
+        byte[] payload = new byte[1024 * 1024];
+        new Random(19).nextBytes(payload);
+
+        CompletableFuture<byte[]> received = new CompletableFuture<>();
+        connect(transport, 16 * 1024);
+        server.addPacketHandler(PayloadPacket.class, (p, c) -> received.complete(p.getPayload()));
+
+        long frames = client.getConnection().getMetrics().getPacketsOut();
+        client.sendRaw(new PayloadPacket(payload));
+
+        assertArrayEquals(payload, received.get(5, TimeUnit.SECONDS));
+        assertTrue(client.getConnection().getMetrics().getPacketsOut() - frames >= payload.length / (16 * 1024));
+    }
+
+    @Test
+    void smallPacketOvertakesQueuedTransfer() throws Exception {
+        this.client = new Client();
+        client.setChunkSize(16 * 1024);
+        StalledConnection connection = new StalledConnection(client);
+
+        connection.sendRaw(new PayloadPacket(new byte[256 * 1024]));
+        assertTrue(Connection.isChunk(connection.pollFrame()));
+
+        // Taken before the next chunk, so the transfer delays it by at most one chunk
+        connection.sendRaw(new PayloadPacket(new byte[16]));
+        byte[] small = connection.pollFrame();
+        assertFalse(Connection.isChunk(small));
+        assertTrue(small.length < 1024);
+        assertTrue(Connection.isChunk(connection.pollFrame()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void oversizedTransferIsDroppedWithoutAffectingLaterPackets(TransportType transport) throws Exception {
+        AtomicInteger big = new AtomicInteger();
+        connect(transport, 16 * 1024);
+        server.setMaxTransferSize(256 * 1024);
+        server.addPacketHandler(PayloadPacket.class, (p, c) -> {
+            if (p.getPayload().length > 16) {
+                big.incrementAndGet();
+                return;
+            }
+            try {
+                PayloadPacket response = new PayloadPacket(p.getPayload());
+                response.replyTo(p);
+                c.sendRaw(response);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        client.sendRaw(new PayloadPacket(new byte[1024 * 1024]));
+
+        assertNotNull(client.send(new PayloadPacket(new byte[16])).get(5, TimeUnit.SECONDS));
+        assertEquals(0, big.get());
+    }
+
+    private void connect(TransportType transport, int chunkSize) throws IOException {
+        this.server = new Server("127.0.0.1", 0);
+        server.setTransportType(transport);
+        server.setChunkSize(chunkSize);
+        server.start();
+
+        this.client = new Client();
+        client.setTransportType(transport);
+        client.setChunkSize(chunkSize);
+        client.enableMetrics(false);
+        client.addPacketHandler(PayloadPacket.class, (p, c) -> {});
+        client.connect("127.0.0.1", server.getServerSocket().getLocalPort());
+    }
+
+    static class PayloadPacket extends AbstractPacket {
+
+        private final byte[] payload;
+
+        PayloadPacket(byte[] payload) {
+            this.payload = payload;
+        }
+
+        byte[] getPayload() {
+            return payload;
+        }
+
+    }
+
+}
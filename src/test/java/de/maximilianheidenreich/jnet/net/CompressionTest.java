@@ -0,0 +1,107 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.codec.DeflateCompressor;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.net.server.Server;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionTest {
+
+    private static final String TEXT = repeat("hello world ", 4096);
+
+    private Server server;
+    private Client client;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) client.disconnect();
+        if (server != null) server.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void bigFramesAreCompressedOnceBothPeersAgree(TransportType transport) throws Exception {
+        connect(transport, true);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!client.getConnection().isCompressionEnabled() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertTrue(client.getConnection().isCompressionEnabled());
+
+        long written = client.getConnection().getMetrics().getBytesOut();
+        assertEquals(TEXT.toUpperCase(), echo(TEXT));
+
+        // The request carries the whole text, so it only fits this budget if it was compressed
+        written = client.getConnection().getMetrics().getBytesOut() - written;
+        assertTrue(written > 0 && written < TEXT.length() / 10);
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void peerWithoutCompressorReceivesPlainFrames(TransportType transport) throws Exception {
+        connect(transport, false);
+
+        assertEquals(TEXT.toUpperCase(), echo(TEXT));
+        assertFalse(client.getConnection().isCompressionEnabled());
+    }
+
+    private void connect(TransportType transport, boolean serverCompresses) throws IOException {
+        this.server = new Server("127.0.0.1", 0);
+        server.setTransportType(transport);
+        if (serverCompresses) server.setCompressor(new DeflateCompressor());
+        server.addPacketHandler(TextPacket.class, (p, c) -> {
+            try {
+                TextPacket response = new TextPacket(p.getText().toUpperCase());
+                response.replyTo(p);
+                c.sendRaw(response);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.start();
+
+        this.client = new Client();
+        client.setTransportType(transport);
+        client.setCompressor(new DeflateCompressor());
+        client.enableMetrics(false);
+        client.addPacketHandler(TextPacket.class, (p, c) -> {});
+        client.connect("127.0.0.1", server.getServerSocket().getLocalPort());
+    }
+
+    private String echo(String text) throws Exception {
+        return ((TextPacket) client.send(new TextPacket(text)).get(5, TimeUnit.SECONDS)).getText();
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            builder.append(text);
+        return builder.toString();
+    }
+
+    static class TextPacket extends AbstractPacket {
+
+        private final String text;
+
+        TextPacket(String text) {
+            this.text = text;
+        }
+
+        String getText() {
+            return text;
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.net.server.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.DataOutputStream;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FrameLengthTest {
+
+    private Server server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) server.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void oversizedFrameClosesConnection(TransportType transport) throws Exception {
+        this.server = new Server("127.0.0.1", 0);
+        server.setTransportType(transport);
+        server.setMaxTransferSize(1024 * 1024);
+        server.start();
+
+        try (Socket socket = new Socket("127.0.0.1", server.getServerSocket().getLocalPort())) {
+            socket.setSoTimeout(5000);
+
+            // Announce a frame far above the maximum transfer size without sending its body
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(Connection.FRAME_LENGTH);
+            out.flush();
+
+            // Skip the handshake of the server until the connection is closed
+            byte[] buffer = new byte[1024];
+            int read;
+            do read = socket.getInputStream().read(buffer);
+            while (read > 0);
+            assertEquals(-1, read);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.exceptions.PacketTimeoutException;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightWindowTest {
+
+    private Client packetManager;
+    private StalledConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        this.packetManager = new Client();
+        packetManager.setInFlightWindow(1);
+        packetManager.setChunkSize(16 * 1024);
+        packetManager.setWriteWatermarks(new WriteWatermarks(32 * 1024, 64 * 1024, 4096, 8192));
+        packetManager.setBackpressureMode(BackpressureMode.BLOCK);
+        this.connection = new StalledConnection(packetManager);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+        packetManager.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void releasedRequestBlockedByBackpressureDoesNotStallTimeouts() throws Exception {
+        AbstractPacket first = new AbstractPacket();
+        first.setTimout(50, TimeUnit.MILLISECONDS);
+        connection.send(first);
+
+        // Fill the outbound queue, so the next written request has to wait for writability
+        connection.sendRaw(new PayloadPacket(256 * 1024));
+        assertFalse(connection.isWritable());
+
+        // Gets the slot of the first request once it timed out & blocks while being written
+        connection.send(new AbstractPacket());
+
+        AbstractPacket last = new AbstractPacket();
+        last.setTimout(200, TimeUnit.MILLISECONDS);
+        CompletableFuture<AbstractPacket> lastFuture = connection.send(last);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> lastFuture.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(PacketTimeoutException.class, error.getCause());
+    }
+
+    @Test
+    void nameChangeDoesNotOccupyWindow() throws Exception {
+        connection.setNameRemote("renamed");
+        assertTrue(packetManager.getCallbacks().isEmpty());
+
+        // Written right away, because the name change left the only slot free
+        connection.send(new AbstractPacket());
+        assertEquals(2, connection.getPendingPackets());
+    }
+
+    static class PayloadPacket extends AbstractPacket {
+
+        private final byte[] payload;
+
+        PayloadPacket(int size) {
+            this.payload = new byte[size];
+        }
+
+    }
+
+}
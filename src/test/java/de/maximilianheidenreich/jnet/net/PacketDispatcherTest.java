@@ -0,0 +1,69 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.PacketPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PacketDispatcherTest {
+
+    private final Client packetManager = new Client();
+    private final StalledConnection connection = new StalledConnection(packetManager);
+    private PacketDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) dispatcher.shutdown();
+        packetManager.shutdown();
+    }
+
+    @Test
+    void lanesKeepDispatchOrderByDefault() throws Exception {
+        this.dispatcher = new PacketDispatcher(1);
+
+        assertEquals(Arrays.asList(PacketPriority.BULK, PacketPriority.INTERACTIVE, PacketPriority.CONTROL),
+                dispatchWhileBusy(PacketPriority.BULK, PacketPriority.INTERACTIVE, PacketPriority.CONTROL));
+    }
+
+    @Test
+    void prioritizedLanesHandleHigherPriorityFirst() throws Exception {
+        this.dispatcher = new PacketDispatcher(1, true);
+
+        assertEquals(Arrays.asList(PacketPriority.CONTROL, PacketPriority.INTERACTIVE, PacketPriority.BULK, PacketPriority.BULK),
+                dispatchWhileBusy(PacketPriority.BULK, PacketPriority.INTERACTIVE, PacketPriority.BULK, PacketPriority.CONTROL));
+    }
+
+    /**
+     * Dispatches tasks while the lane is still busy with an earlier one, so they all wait in its queue.
+     */
+    private List<PacketPriority> dispatchWhileBusy(PacketPriority... priorities) throws InterruptedException {
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(priorities.length);
+        List<PacketPriority> handled = new CopyOnWriteArrayList<>();
+
+        dispatcher.dispatch(connection, () -> {
+            try { busy.await(); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        });
+        for (PacketPriority priority : priorities) {
+            dispatcher.dispatch(connection, priority, () -> {
+                handled.add(priority);
+                done.countDown();
+            });
+        }
+
+        busy.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return handled;
+    }
+
+}
@@ -0,0 +1,102 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.exceptions.ConnectionClosedException;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.net.server.Server;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PacketManagerShutdownTest {
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void stoppingLeavesNoThreadRunning(TransportType transport) throws Exception {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+
+        Server server = new Server("127.0.0.1", freePort());
+        server.setTransportType(transport);
+        server.setDispatchLanes(2);
+        server.enableHeartbeat(50, TimeUnit.MILLISECONDS, 0);
+        server.start();
+
+        Client client = new Client();
+        client.setTransportType(transport);
+        client.enableReconnect(50, 200, TimeUnit.MILLISECONDS);
+        client.connect("127.0.0.1", server.getPort());
+
+        // Pending until the client disconnects, so the callback timer is running as well
+        AbstractPacket request = new AbstractPacket();
+        request.setTimout(10, TimeUnit.SECONDS);
+        CompletableFuture<AbstractPacket> response = client.send(request);
+
+        client.disconnect();
+        assertTrue(server.stop());
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectionClosedException.class, error.getCause());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Set<Thread> started = startedSince(before);
+        while (!started.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            started = startedSince(before);
+        }
+        assertEquals(Set.of(), started.stream().map(Thread::getName).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void closingConnectionFailsOnlyItsOwnCallbacks() throws Exception {
+        Client packetManager = new Client();
+        StalledConnection closed = new StalledConnection(packetManager);
+        StalledConnection open = new StalledConnection(packetManager);
+
+        try {
+            CompletableFuture<AbstractPacket> lost = closed.send(new AbstractPacket());
+            CompletableFuture<AbstractPacket> pending = open.send(new AbstractPacket());
+            assertEquals(2, packetManager.getCallbacks().size());
+
+            closed.close();
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> lost.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(ConnectionClosedException.class, error.getCause());
+            assertFalse(pending.isDone());
+            assertEquals(1, packetManager.getCallbacks().size());
+        }
+        finally {
+            open.close();
+            packetManager.shutdown();
+        }
+    }
+
+    private static Set<Thread> startedSince(Set<Thread> before) {
+
+        // The coarse clock is shared by all packet managers of the JVM
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> !before.contains(thread) && thread.isAlive())
+                .filter(thread -> !thread.getName().startsWith("JNet-CoarseClock-"))
+                .collect(Collectors.toSet());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.exceptions.ConnectionClosedException;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendFileTest {
+
+    private Client packetManager;
+    private StalledConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        this.packetManager = new Client();
+        this.connection = new StalledConnection(packetManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        packetManager.shutdown();
+    }
+
+    @Test
+    void closedConnectionLeavesNoCallback(@TempDir Path directory) throws Exception {
+        Path file = Files.write(directory.resolve("data"), new byte[1024]);
+        connection.close();
+
+        CompletableFuture<AbstractPacket> future = connection.sendFile(file, null);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectionClosedException.class, error.getCause());
+        assertTrue(packetManager.getCallbacks().isEmpty());
+        assertEquals(0, connection.getPendingCallbackCount());
+    }
+
+}
@@ -0,0 +1,84 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.net.client.Client;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class SocketConnectionTest {
+
+    private Client packetManager;
+    private ServerSocket serverSocket;
+    private Socket peer;
+    private SocketConnection connection;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.packetManager = new Client();
+        this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+
+        // The peer never reads
+        this.peer = serverSocket.accept();
+        this.connection = new SocketConnection(packetManager, socket);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connection.close();
+        peer.close();
+        serverSocket.close();
+        packetManager.shutdown();
+    }
+
+    @Test
+    void heartbeatDoesNotBlockOnFullSocket() throws Exception {
+        fillSocketBuffers(connection.getSocket());
+
+        // Called by the single scheduler thread, which would stall the heartbeats of all other connections
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> connection.heartbeat(0));
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> connection.heartbeat(0));
+    }
+
+    /**
+     * Writes to a socket from another thread until a write blocks.
+     */
+    private static void fillSocketBuffers(Socket socket) throws Exception {
+        AtomicLong written = new AtomicLong();
+        Thread filler = new Thread(() -> {
+            byte[] chunk = new byte[8192];
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    out.write(chunk);
+                    written.addAndGet(chunk.length);
+                }
+            }
+            catch (IOException e) {
+                // Closed by the test
+            }
+        });
+        filler.setDaemon(true);
+        filler.start();
+
+        // Blocked once nothing was written for a while
+        long last = -1;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written.get() != last && System.nanoTime() < deadline) {
+            last = written.get();
+            Thread.sleep(100);
+        }
+    }
+
+}
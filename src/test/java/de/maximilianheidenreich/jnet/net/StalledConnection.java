@@ -0,0 +1,18 @@
+package de.maximilianheidenreich.jnet.net;
+
+import java.net.Socket;
+
+/**
+ * A connection without a socket whose writer never drains the outbound queue.
+ */
+class StalledConnection extends Connection {
+
+    StalledConnection(AbstractPacketManager packetManager) {
+        super(packetManager, new Socket(), "stalled");
+    }
+
+    @Override
+    protected void scheduleWrite() {
+    }
+
+}
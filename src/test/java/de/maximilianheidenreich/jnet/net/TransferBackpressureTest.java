@@ -0,0 +1,77 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.exceptions.BackpressureException;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferBackpressureTest {
+
+    private Client packetManager;
+    private StalledConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        this.packetManager = new Client();
+        packetManager.setChunkSize(16 * 1024);
+        packetManager.setWriteWatermarks(new WriteWatermarks(32 * 1024, 64 * 1024, 4096, 8192));
+        packetManager.setBackpressureMode(BackpressureMode.FAIL);
+        this.connection = new StalledConnection(packetManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        packetManager.shutdown();
+    }
+
+    @Test
+    void bigFrameCountsTowardsWatermark() throws Exception {
+        connection.sendRaw(new PayloadPacket(256 * 1024)).get(1, TimeUnit.SECONDS);
+
+        assertFalse(connection.isWritable());
+        assertTrue(connection.getPendingTransferBytes() > 256 * 1024);
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> connection.sendRaw(new PayloadPacket(16)).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(BackpressureException.class, error.getCause());
+    }
+
+    @Test
+    void fileCountsTowardsWatermark(@TempDir Path directory) throws Exception {
+        Path file = Files.write(directory.resolve("data"), new byte[256 * 1024]);
+
+        connection.sendFile(file, null);
+        assertFalse(connection.isWritable());
+        assertEquals(256 * 1024, connection.getPendingTransferBytes());
+
+        CompletableFuture<AbstractPacket> rejected = connection.sendFile(file, null);
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(BackpressureException.class, error.getCause());
+    }
+
+    static class PayloadPacket extends AbstractPacket {
+
+        private final byte[] payload;
+
+        PayloadPacket(int size) {
+            this.payload = new byte[size];
+        }
+
+    }
+
+}
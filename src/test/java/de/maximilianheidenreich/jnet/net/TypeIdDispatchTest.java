@@ -0,0 +1,89 @@
+package de.maximilianheidenreich.jnet.net;
+
+import de.maximilianheidenreich.jnet.codec.PacketHeader;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.PacketRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TypeIdDispatchTest {
+
+    private static final int TYPE_ID = PacketRegistry.FIRST_USER_ID;
+
+    private AbstractPacketManager packetManager;
+    private StalledConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        this.packetManager = new Client();
+        packetManager.registerPacket(TYPE_ID, RegisteredPacket.class);
+        this.connection = new StalledConnection(packetManager);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connection.close();
+        packetManager.shutdown();
+    }
+
+    @Test
+    void handlersAreFoundByTypeId() {
+        AtomicInteger handled = new AtomicInteger();
+        packetManager.addPacketHandler(RegisteredPacket.class, (p, c) -> handled.incrementAndGet());
+
+        packetManager.handlePacket(new RegisteredPacket(), connection, TYPE_ID);
+        packetManager.handlePacket(new RegisteredPacket(), connection, PacketRegistry.UNREGISTERED);
+        assertEquals(2, handled.get());
+    }
+
+    @Test
+    void typeIdOfOtherClassFallsBackToClass() {
+        AtomicInteger handled = new AtomicInteger();
+        packetManager.addPacketHandler(UnregisteredPacket.class, (p, c) -> handled.incrementAndGet());
+
+        // The peer registered a different class under the id
+        packetManager.handlePacket(new UnregisteredPacket(), connection, TYPE_ID);
+        assertEquals(1, handled.get());
+    }
+
+    @Test
+    void registeredPacketWithoutHandlersIsSkipped() throws IOException {
+        PacketHeader header = header(new RegisteredPacket());
+        assertTrue(packetManager.skipPacket(header, connection));
+
+        packetManager.addPacketHandler(RegisteredPacket.class, (p, c) -> {});
+        assertFalse(packetManager.skipPacket(header, connection));
+    }
+
+    @Test
+    void unregisteredPacketIsNeverSkipped() throws IOException {
+        assertFalse(packetManager.skipPacket(header(new UnregisteredPacket()), connection));
+    }
+
+    private PacketHeader header(AbstractPacket packet) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packetManager.getCodec().encode(packet, out);
+        byte[] frame = out.toByteArray();
+
+        PacketHeader header = new PacketHeader();
+        packetManager.getCodec().readHeader(frame, 0, frame.length, header);
+        return header;
+    }
+
+    static class RegisteredPacket extends AbstractPacket {
+    }
+
+    static class UnregisteredPacket extends AbstractPacket {
+    }
+
+}
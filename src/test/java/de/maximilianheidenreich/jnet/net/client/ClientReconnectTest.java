@@ -0,0 +1,116 @@
+package de.maximilianheidenreich.jnet.net.client;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.TransportType;
+import de.maximilianheidenreich.jnet.net.server.Server;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientReconnectTest {
+
+    private Server server;
+    private Client client;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) client.disconnect();
+        if (server != null) server.stop();
+    }
+
+    @Test
+    void sendWithoutConnectionThrows() {
+        this.client = new Client();
+
+        assertThrows(IOException.class, () -> client.send(new AbstractPacket()));
+        assertThrows(IOException.class, () -> client.sendRaw(new AbstractPacket()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void requestSentWhileReconnectingIsReplayed(TransportType transport) throws Exception {
+        int port = freePort();
+        this.server = echoServer(transport, port);
+
+        this.client = new Client();
+        client.setTransportType(transport);
+        client.enableReconnect(50, 200, TimeUnit.MILLISECONDS);
+        client.setReplayBufferSize(16);
+        client.addPacketHandler(EchoPacket.class, (p, c) -> {});
+        client.connect("127.0.0.1", port);
+        awaitTrue(() -> server.getConnections().size() == 1);
+
+        // Take the server down, so the client keeps failing to reconnect until it is back
+        Connection lost = client.getConnection();
+        server.getServerSocket().close();
+        for (Connection connection : new ArrayList<>(server.getConnections()))
+            connection.close();
+        server.stop();
+        awaitTrue(lost::isClosed);
+
+        EchoPacket request = new EchoPacket(42);
+        request.setTimout(10, TimeUnit.SECONDS);
+        CompletableFuture<AbstractPacket> response = client.send(request);
+
+        this.server = echoServer(transport, port);
+        assertEquals(42, ((EchoPacket) response.get(10, TimeUnit.SECONDS)).getValue());
+    }
+
+    private static Server echoServer(TransportType transport, int port) throws IOException {
+        Server server = new Server("127.0.0.1", port);
+        server.setTransportType(transport);
+        server.addPacketHandler(EchoPacket.class, (p, c) -> {
+            try {
+                EchoPacket response = new EchoPacket(p.getValue());
+                response.replyTo(p);
+                c.sendRaw(response);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    static class EchoPacket extends AbstractPacket {
+
+        private final int value;
+
+        EchoPacket(int value) {
+            this.value = value;
+        }
+
+        int getValue() {
+            return value;
+        }
+
+    }
+
+}
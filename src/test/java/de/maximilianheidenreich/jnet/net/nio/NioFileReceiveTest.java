@@ -0,0 +1,111 @@
+package de.maximilianheidenreich.jnet.net.nio;
+
+import de.maximilianheidenreich.jnet.net.TransportType;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.net.server.Server;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import de.maximilianheidenreich.jnet.packets.FilePacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class NioFileReceiveTest {
+
+    private Server server;
+    private Client sender;
+    private Client pinger;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (sender != null) sender.disconnect();
+        if (pinger != null) pinger.disconnect();
+        if (server != null) server.stop();
+    }
+
+    @Test
+    void slowFileConsumerDoesNotStallSelector(@TempDir Path directory) throws Exception {
+        byte[] content = new byte[4 << 20];
+        new Random(7).nextBytes(content);
+        Path file = Files.write(directory.resolve("data"), content);
+        Path received = directory.resolve("received");
+
+        int port = freePort();
+        this.server = new Server("127.0.0.1", port);
+        server.setTransportType(TransportType.NIO);
+        server.setIoThreads(1);
+        server.setDispatchLanes(2);
+
+        CountDownLatch consume = new CountDownLatch(1);
+        server.addPacketHandler(FilePacket.class, (p, c) -> {
+            try {
+                consume.await();
+                p.saveTo(received);
+                AbstractPacket ack = new AbstractPacket();
+                ack.replyTo(p);
+                c.sendRaw(ack);
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.addPacketHandler(PingPacket.class, (p, c) -> {
+            try {
+                PingPacket pong = new PingPacket();
+                pong.replyTo(p);
+                c.sendRaw(pong);
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.start();
+
+        this.sender = connect(port);
+        this.pinger = connect(port);
+
+        // The file exceeds the buffered chunks many times, so reading from the sender gets paused
+        CompletableFuture<AbstractPacket> transfer = sender.getConnection().sendFile(file, null);
+
+        // Both connections share the only selector thread
+        for (int i = 0; i < 5; i++)
+            assertNotNull(pinger.send(new PingPacket()).get(5, TimeUnit.SECONDS));
+        assertFalse(transfer.isDone());
+
+        consume.countDown();
+        assertNotNull(transfer.get(10, TimeUnit.SECONDS));
+        assertArrayEquals(content, Files.readAllBytes(received));
+        assertFalse(pinger.getConnection().isClosed());
+    }
+
+    private static Client connect(int port) throws IOException {
+        Client client = new Client();
+        client.setTransportType(TransportType.NIO);
+        client.addPacketHandler(PingPacket.class, (p, c) -> {});
+        client.addPacketHandler(AbstractPacket.class, (p, c) -> {});
+        client.connect("127.0.0.1", port);
+        return client;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static class PingPacket extends AbstractPacket {
+    }
+
+}
@@ -0,0 +1,33 @@
+package de.maximilianheidenreich.jnet.net.nio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NioSelectorPoolTest {
+
+    @Test
+    void selectorThreadsAreDaemonsAndStopOnShutdown() throws Exception {
+        NioSelectorPool pool = new NioSelectorPool(2);
+        assertEquals(2, pool.getSelectorThreads().length);
+
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("JNet-NioSelector-"))
+                .allMatch(Thread::isDaemon));
+
+        pool.shutdown();
+
+        // Every thread closes its selector once it stopped selecting
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (NioSelectorThread thread : pool.getSelectorThreads()) {
+            while (thread.getSelector().isOpen() && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertFalse(thread.getSelector().isOpen());
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package de.maximilianheidenreich.jnet.net.server;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.TransportType;
+import de.maximilianheidenreich.jnet.net.WriteWatermarks;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import de.maximilianheidenreich.jnet.packets.AbstractPacket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerBroadcastTest {
+
+    private Server server;
+    private Client client;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) client.disconnect();
+        if (server != null) server.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void broadcastReachesRenamedClientOnce(TransportType transport) throws Exception {
+        this.server = new Server("127.0.0.1", 0);
+        server.setTransportType(transport);
+        server.start();
+
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch marked = new CountDownLatch(1);
+
+        this.client = new Client();
+        client.setTransportType(transport);
+        client.addPacketHandler(BroadcastPacket.class, (p, c) -> received.incrementAndGet());
+        client.addPacketHandler(MarkerPacket.class, (p, c) -> marked.countDown());
+        client.connect("127.0.0.1", server.getServerSocket().getLocalPort());
+        client.setNameRemote("renamed");
+
+        Connection renamed = awaitConnection("renamed");
+        assertEquals(1, server.getConnections().size());
+
+        server.broadcast(new BroadcastPacket()).get(5, TimeUnit.SECONDS);
+
+        // Frames of a connection arrive in order, so every copy of the broadcast is handled before the marker
+        renamed.sendRaw(new MarkerPacket());
+        assertTrue(marked.await(5, TimeUnit.SECONDS));
+        assertEquals(1, received.get());
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void publishSkipsSubscriberAboveHighWatermark(TransportType transport) throws Exception {
+        this.server = new Server("127.0.0.1", 0);
+        server.setTransportType(transport);
+        server.setWriteWatermarks(new WriteWatermarks(1024, 64 * 1024, 1, 2));
+        server.start();
+
+        CountDownLatch published = new CountDownLatch(1);
+        this.client = new Client();
+        client.setTransportType(transport);
+        client.addPacketHandler(BroadcastPacket.class, (p, c) -> published.countDown());
+        client.connect("127.0.0.1", server.getServerSocket().getLocalPort());
+        client.setNameRemote("fast");
+
+        // Queued frames of the stalled subscriber are never written, so it stays above its high watermark
+        Connection stalled = new StalledConnection(server);
+        server.addConnection("stalled", stalled);
+        for (int i = 0; i < 3; i++)
+            stalled.sendRaw(new MarkerPacket());
+        assertFalse(stalled.isWritable());
+
+        server.subscribe(stalled, "topic");
+        server.subscribe(awaitConnection("fast"), "topic");
+
+        // Blocking on the stalled subscriber would never complete
+        server.publish("topic", new BroadcastPacket()).get(5, TimeUnit.SECONDS);
+
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getSkippedTargets());
+    }
+
+    private Connection awaitConnection(String name) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getConnectionByName(name) == null && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        Connection connection = server.getConnectionByName(name);
+        assertTrue(connection != null, "Connection was not renamed");
+        return connection;
+    }
+
+    static class BroadcastPacket extends AbstractPacket {}
+
+    /**
+     * A connection without a socket whose writer never drains the outbound queue.
+     */
+    static class StalledConnection extends Connection {
+
+        StalledConnection(Server server) {
+            super(server, new Socket(), "stalled");
+        }
+
+        @Override
+        protected void scheduleWrite() {
+        }
+
+    }
+
+    static class MarkerPacket extends AbstractPacket {}
+
+}
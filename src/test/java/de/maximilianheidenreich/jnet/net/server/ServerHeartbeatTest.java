@@ -0,0 +1,60 @@
+package de.maximilianheidenreich.jnet.net.server;
+
+import de.maximilianheidenreich.jnet.net.Connection;
+import de.maximilianheidenreich.jnet.net.client.Client;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerHeartbeatTest {
+
+    private Server server;
+    private Client client;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) client.disconnect();
+        if (server != null) {
+            server.disableHeartbeat();
+            server.stop();
+        }
+    }
+
+    @Test
+    void heartbeatKeepsRenamedClientOpen() throws Exception {
+        this.server = new Server("127.0.0.1", 0);
+        server.start();
+
+        this.client = new Client();
+        client.connect("127.0.0.1", server.getServerSocket().getLocalPort());
+        client.setNameRemote("renamed");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getConnectionByName("renamed") == null && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        Connection renamed = server.getConnectionByName("renamed");
+        assertNotNull(renamed);
+
+        // Visiting a connection twice per interval would count the heartbeat it just sent as missed & close it
+        // within two intervals. A single late echo is tolerated, so a slow machine does not fail the test
+        server.enableMetrics(false);
+        long echoes = renamed.getMetrics().getPacketsIn() + 5;
+        server.enableHeartbeat(100, TimeUnit.MILLISECONDS, 2);
+
+        // The client sends nothing but echoes, so wait until several heartbeats were answered
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (renamed.getMetrics().getPacketsIn() < echoes && !renamed.isClosed() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        assertTrue(renamed.getMetrics().getPacketsIn() >= echoes);
+        assertFalse(renamed.isClosed());
+        assertEquals(1, server.getConnections().size());
+    }
+
+}
@@ -0,0 +1,78 @@
+package de.maximilianheidenreich.jnet.packets;
+
+import de.maximilianheidenreich.jnet.packets.core.HandshakePacket;
+import de.maximilianheidenreich.jnet.packets.core.NameChangePacket;
+import de.maximilianheidenreich.jnet.packets.core.TimingPacket;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PacketRegistryTest {
+
+    private final PacketRegistry registry = new PacketRegistry();
+
+    @Test
+    void corePacketsUseReservedIds() {
+        assertEquals(0, registry.getId(NameChangePacket.class));
+        assertEquals(1, registry.getId(TimingPacket.class));
+        assertEquals(2, registry.getId(ExceptionPacket.class));
+        assertEquals(3, registry.getId(HandshakePacket.class));
+        assertEquals(4, registry.getId(FilePacket.class));
+        assertNotNull(registry.getSerializer(0));
+        assertNull(registry.getSerializer(2));
+    }
+
+    @Test
+    void unregisteredClassHasNoId() {
+        assertEquals(PacketRegistry.UNREGISTERED, registry.getId(CustomPacket.class));
+        assertNull(registry.getPacketClass(PacketRegistry.UNREGISTERED));
+        assertNull(registry.getPacketClass(PacketRegistry.FIRST_USER_ID));
+    }
+
+    @Test
+    void registeredClassIsResolvedBothWays() {
+
+        // Looked up once before, so the cached id has to be replaced
+        assertEquals(PacketRegistry.UNREGISTERED, registry.getId(CustomPacket.class));
+        registry.register(PacketRegistry.FIRST_USER_ID, CustomPacket.class);
+
+        assertEquals(PacketRegistry.FIRST_USER_ID, registry.getId(CustomPacket.class));
+        assertSame(CustomPacket.class, registry.getPacketClass(PacketRegistry.FIRST_USER_ID));
+    }
+
+    @Test
+    void registryGrowsForHighIds() {
+        registry.register(PacketRegistry.MAX_ID, CustomPacket.class);
+
+        assertEquals(PacketRegistry.MAX_ID, registry.getId(CustomPacket.class));
+        assertSame(CustomPacket.class, registry.getPacketClass(PacketRegistry.MAX_ID));
+    }
+
+    @Test
+    void idUsedByAnotherClassIsRejected() {
+        registry.register(PacketRegistry.FIRST_USER_ID, CustomPacket.class);
+
+        assertThrows(IllegalArgumentException.class, () -> registry.register(PacketRegistry.FIRST_USER_ID, OtherPacket.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(0, CustomPacket.class));
+
+        // Registering the same class again is fine
+        registry.register(PacketRegistry.FIRST_USER_ID, CustomPacket.class);
+    }
+
+    @Test
+    void idOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> registry.register(-1, CustomPacket.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(PacketRegistry.MAX_ID + 1, CustomPacket.class));
+    }
+
+    static class CustomPacket extends AbstractPacket {
+    }
+
+    static class OtherPacket extends AbstractPacket {
+    }
+
+}
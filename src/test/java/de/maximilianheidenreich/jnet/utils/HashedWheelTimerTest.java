@@ -0,0 +1,103 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedWheelTimerTest {
+
+    private static final AtomicInteger TIMER_COUNT = new AtomicInteger();
+
+    private final String name = "Test-WheelTimer-" + TIMER_COUNT.incrementAndGet();
+    private final HashedWheelTimer timer = new HashedWheelTimer(name, 10, TimeUnit.MILLISECONDS, 8);
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void workerStartsWithFirstTimeout() throws Exception {
+        assertFalse(isWorkerAlive());
+
+        LatchTimeout timeout = new LatchTimeout();
+        timer.schedule(timeout, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(isWorkerAlive());
+        assertTrue(timeout.expired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void timeoutExpiresAfterItsDelay() throws Exception {
+        LatchTimeout timeout = new LatchTimeout();
+        long start = System.nanoTime();
+        timer.schedule(timeout, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.expired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    void timeoutBeyondOneRoundExpires() throws Exception {
+
+        // 8 buckets of 10 ms make one round last 80 ms
+        LatchTimeout timeout = new LatchTimeout();
+        long start = System.nanoTime();
+        timer.schedule(timeout, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.expired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    void cancelledTimeoutDoesNotExpire() throws Exception {
+        LatchTimeout cancelled = new LatchTimeout();
+        LatchTimeout later = new LatchTimeout();
+        timer.schedule(cancelled, 20, TimeUnit.MILLISECONDS);
+        timer.schedule(later, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertTrue(later.expired.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelled.isExpired());
+        assertFalse(cancelled.cancel());
+    }
+
+    @Test
+    void stopEndsWorker() throws Exception {
+        timer.schedule(new LatchTimeout(), 1, TimeUnit.SECONDS);
+        timer.stop();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (isWorkerAlive() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertFalse(isWorkerAlive());
+
+        // A stopped timer is never started again
+        timer.schedule(new LatchTimeout(), 10, TimeUnit.MILLISECONDS);
+        assertFalse(isWorkerAlive());
+    }
+
+    private boolean isWorkerAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().startsWith(name + "-") && thread.isAlive());
+    }
+
+    private static final class LatchTimeout extends HashedWheelTimer.Timeout {
+
+        private final CountDownLatch expired = new CountDownLatch(1);
+
+        @Override
+        protected void expire() {
+            expired.countDown();
+        }
+
+    }
+
+}
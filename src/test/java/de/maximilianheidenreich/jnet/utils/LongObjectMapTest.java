@@ -0,0 +1,94 @@
+package de.maximilianheidenreich.jnet.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongObjectMapTest {
+
+    @Test
+    void putReplacesValueOfSameKey() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.put(7, "b"));
+        assertEquals("b", map.get(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void keyZeroIsReserved() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "a"));
+        assertNull(map.get(0));
+        assertNull(map.remove(0));
+    }
+
+    @Test
+    void conditionalRemoveComparesByIdentity() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        String value = new String("a");
+        map.put(1, value);
+
+        assertFalse(map.remove(1, new String("a")));
+        assertFalse(map.remove(2, value));
+        assertTrue(map.remove(1, value));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void clearRemovesEveryEntry() {
+        LongObjectMap<String> map = new LongObjectMap<>(4);
+        for (long key = 1; key <= 100; key++)
+            map.put(key, "v" + key);
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(50));
+        List<String> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertTrue(values.isEmpty());
+    }
+
+    @Test
+    void behavesLikeHashMapAcrossResizesAndRemoves() {
+        LongObjectMap<Long> map = new LongObjectMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(8);
+
+        // Few distinct keys make long probe clusters, so removes have to shift entries back
+        for (int i = 0; i < 100_000; i++) {
+            long key = 1 + random.nextInt(512);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else {
+                Long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 512; key++)
+            assertSame(expected.get(key), map.get(key));
+
+        List<Long> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(expected.size(), values.size());
+        assertTrue(expected.values().containsAll(values));
+    }
+
+}